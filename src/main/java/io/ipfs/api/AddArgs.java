@@ -6,6 +6,7 @@ import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.stream.Collectors;
 
 /*
@@ -23,6 +24,21 @@ public final class AddArgs {
     args.putAll(builder.args);
   }
 
+  private AddArgs(Map<String, String> args) {
+    this.args.putAll(args);
+  }
+
+  Optional<String> get(String key) {
+    return Optional.ofNullable(args.get(key));
+  }
+
+  /** Returns a copy of these arguments with the given key overridden. */
+  AddArgs with(String key, String value) {
+    AddArgs res = new AddArgs(args);
+    res.args.put(key, value);
+    return res;
+  }
+
   @Override
   public String toString() {
     List<String> asList =
@@ -0,0 +1,239 @@
+package io.ipfs.api;
+
+import io.ipfs.cid.Cid;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * A persistent record of the CIDs of previously imported files, keyed by path, size, modification
+ * time and file key (the inode on unix), which lets {@link UnixFSImporter} skip files that have not
+ * changed since they were last added.
+ *
+ * <p>Entries are appended to a log file, which is memory mapped and replayed when the index is
+ * opened, later entries for a path replacing earlier ones. A partially written trailing entry is
+ * discarded. The log is rewritten with just the current entries on close once superseded records
+ * outnumber them. An index is tied to the importer parameters it was created with, and assumes the
+ * node still has the blocks of indexed files, e.g. because an earlier root is pinned.
+ */
+public class AddIndex implements Closeable {
+
+  private static final long MAGIC = 0x4a49504653494458L; // "JIPFSIDX"
+  private static final int FORMAT_VERSION = 1;
+  private static final int HEADER_SIZE = 8 + 4 + 4 + 1 + 4;
+
+  private final Path file;
+  private final FileChannel channel;
+  private final int cidVersion;
+  private final boolean rawLeaves;
+  private final int chunkSize;
+  private final Map<String, Entry> entries = new HashMap<>();
+
+  /** The number of records in the log, including superseded ones. */
+  private int records;
+
+  /**
+   * Open the index stored in the given file, creating it if necessary.
+   *
+   * @throws IllegalStateException if the file is not an index, or was created with different
+   *     importer parameters
+   */
+  public AddIndex(Path file, UnixFSImporter importer) throws IOException {
+    this.file = file;
+    this.channel =
+        FileChannel.open(
+            file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    try {
+      long length = channel.size();
+      if (length == 0) {
+        cidVersion = importer.cidVersion;
+        rawLeaves = importer.rawLeaves;
+        chunkSize = importer.chunkSize;
+        write(channel, header());
+      } else {
+        if (length > Integer.MAX_VALUE)
+          throw new IllegalStateException("Index file is too large: " + file);
+        MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+        if (length < HEADER_SIZE || map.getLong() != MAGIC || map.getInt() != FORMAT_VERSION)
+          throw new IllegalStateException("Not an add index: " + file);
+        cidVersion = map.getInt();
+        rawLeaves = map.get() != 0;
+        chunkSize = map.getInt();
+        checkParameters(importer);
+        long valid = replay(map);
+        if (valid < length) channel.truncate(valid);
+      }
+      channel.position(channel.size());
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  /** The number of indexed files. */
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  void checkParameters(UnixFSImporter importer) {
+    if (importer.cidVersion != cidVersion
+        || importer.rawLeaves != rawLeaves
+        || importer.chunkSize != chunkSize)
+      throw new IllegalStateException(
+          "Index " + file + " was created with different importer parameters");
+  }
+
+  synchronized UnixFSImporter.Link get(Path path, BasicFileAttributes attrs) {
+    Entry entry = entries.get(key(path));
+    if (entry == null
+        || entry.size != attrs.size()
+        || entry.mtime != mtime(attrs)
+        || !entry.fileKey.equals(fileKey(attrs))) return null;
+    return entry.link;
+  }
+
+  synchronized void put(Path path, BasicFileAttributes attrs, UnixFSImporter.Link link)
+      throws IOException {
+    Entry entry = new Entry(key(path), attrs.size(), mtime(attrs), fileKey(attrs), link);
+    write(channel, record(entry));
+    entries.put(entry.path, entry);
+    records++;
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    if (!channel.isOpen()) return;
+    channel.force(false);
+    channel.close();
+    if (records > 2 * entries.size()) compact();
+  }
+
+  /** Replace the log with one holding a single record per entry. */
+  private void compact() throws IOException {
+    Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+    try (FileChannel out =
+        FileChannel.open(
+            tmp,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING,
+            StandardOpenOption.WRITE)) {
+      write(out, header());
+      for (Entry entry : entries.values()) write(out, record(entry));
+      out.force(false);
+    }
+    Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    records = entries.size();
+  }
+
+  /** Load every complete record, returning the offset after the last one. */
+  private long replay(MappedByteBuffer map) throws IOException {
+    CRC32 crc = new CRC32();
+    while (map.remaining() >= 8) {
+      int start = map.position();
+      int length = map.getInt();
+      if (length <= 0 || length > map.remaining() - 4) return start;
+      byte[] payload = new byte[length];
+      map.get(payload);
+      crc.reset();
+      crc.update(payload);
+      if (map.getInt() != (int) crc.getValue()) return start;
+      Entry entry = Entry.deserialize(payload);
+      entries.put(entry.path, entry);
+      records++;
+    }
+    return map.position();
+  }
+
+  private ByteBuffer header() {
+    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+    header.putLong(MAGIC).putInt(FORMAT_VERSION).putInt(cidVersion);
+    header.put((byte) (rawLeaves ? 1 : 0)).putInt(chunkSize).flip();
+    return header;
+  }
+
+  private static ByteBuffer record(Entry entry) throws IOException {
+    byte[] payload = entry.serialize();
+    CRC32 crc = new CRC32();
+    crc.update(payload);
+    ByteBuffer record = ByteBuffer.allocate(payload.length + 8);
+    record.putInt(payload.length).put(payload).putInt((int) crc.getValue()).flip();
+    return record;
+  }
+
+  private static void write(FileChannel channel, ByteBuffer buf) throws IOException {
+    while (buf.hasRemaining()) channel.write(buf);
+  }
+
+  private static String key(Path path) {
+    return path.toAbsolutePath().normalize().toString();
+  }
+
+  private static long mtime(BasicFileAttributes attrs) {
+    return attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+  }
+
+  private static String fileKey(BasicFileAttributes attrs) {
+    Object key = attrs.fileKey();
+    return key == null ? "" : key.toString();
+  }
+
+  private static final class Entry {
+    final String path;
+    final long size;
+    final long mtime;
+    final String fileKey;
+    final UnixFSImporter.Link link;
+
+    Entry(String path, long size, long mtime, String fileKey, UnixFSImporter.Link link) {
+      this.path = path;
+      this.size = size;
+      this.mtime = mtime;
+      this.fileKey = fileKey;
+      this.link = link;
+    }
+
+    byte[] serialize() throws IOException {
+      ByteArrayOutputStream bout = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(bout);
+      out.writeUTF(path);
+      out.writeLong(size);
+      out.writeLong(mtime);
+      out.writeUTF(fileKey);
+      byte[] cid = link.cid.toBytes();
+      out.writeShort(cid.length);
+      out.write(cid);
+      out.writeLong(link.tsize);
+      out.writeLong(link.fileSize);
+      return bout.toByteArray();
+    }
+
+    static Entry deserialize(byte[] payload) throws IOException {
+      DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+      String path = in.readUTF();
+      long size = in.readLong();
+      long mtime = in.readLong();
+      String fileKey = in.readUTF();
+      byte[] cid = new byte[in.readUnsignedShort()];
+      in.readFully(cid);
+      long tsize = in.readLong();
+      long fileSize = in.readLong();
+      return new Entry(
+          path, size, mtime, fileKey, new UnixFSImporter.Link(Cid.cast(cid), "", tsize, fileSize));
+    }
+  }
+}
@@ -0,0 +1,85 @@
+package io.ipfs.api;
+
+import io.ipfs.multihash.Multihash;
+import java.util.Optional;
+
+/**
+ * An in-memory cache of immutable content, bounded by the total size of the cached bytes. Blocks
+ * are keyed by their multihash, so CIDv0 and CIDv1 forms of the same block share an entry.
+ *
+ * <p>Install one with {@link IPFS#blockCache(BlockCache)} to serve block/get, dag/get and cat of
+ * hot content from memory.
+ */
+public class BlockCache {
+
+  /** Approximate per entry overhead of keys, map nodes and array headers. */
+  private static final int ENTRY_OVERHEAD = 96;
+
+  private final SegmentedLruCache<Object, byte[]> cache;
+
+  public BlockCache(long maxBytes) {
+    this(maxBytes, 16);
+  }
+
+  /**
+   * @param maxBytes the maximum total size of cached values, including a small per entry overhead
+   * @param concurrency the number of independently locked stripes
+   */
+  public BlockCache(long maxBytes, int concurrency) {
+    this.cache = new SegmentedLruCache<>(maxBytes, concurrency, v -> v.length + ENTRY_OVERHEAD);
+  }
+
+  /** A copy of the cached block with this multihash, if present. */
+  public Optional<byte[]> get(Multihash hash) {
+    return lookup(key(hash));
+  }
+
+  public void put(Multihash hash, byte[] block) {
+    store(key(hash), block);
+  }
+
+  public void invalidate(Multihash hash) {
+    cache.invalidate(key(hash));
+  }
+
+  public void clear() {
+    cache.clear();
+  }
+
+  /** The current total weight of the cache in bytes. */
+  public long weight() {
+    return cache.weight();
+  }
+
+  public long hits() {
+    return cache.hits();
+  }
+
+  public long misses() {
+    return cache.misses();
+  }
+
+  public long evictions() {
+    return cache.evictions();
+  }
+
+  public double hitRatio() {
+    long hits = hits();
+    long total = hits + misses();
+    return total == 0 ? 0 : (double) hits / total;
+  }
+
+  /** Look up a value under a key of another namespace, e.g. the output of cat or dag/get. */
+  Optional<byte[]> lookup(Object key) {
+    byte[] value = cache.get(key);
+    return value == null ? Optional.empty() : Optional.of(value.clone());
+  }
+
+  void store(Object key, byte[] value) {
+    cache.put(key, value.clone());
+  }
+
+  static Multihash key(Multihash hash) {
+    return new Multihash(hash.getType(), hash.getHash());
+  }
+}
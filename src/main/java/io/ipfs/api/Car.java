@@ -0,0 +1,183 @@
+package io.ipfs.api;
+
+import io.ipfs.api.cbor.CborObject;
+import io.ipfs.cid.Cid;
+import io.ipfs.multihash.Multihash;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/** Content addressable archives (CARv1), the format of dag/import and dag/export. */
+public class Car {
+
+  private Car() {}
+
+  /**
+   * A CARv1 stream of the given blocks, encoded as it is read so that the blocks are never copied
+   * into a single buffer.
+   *
+   * @param roots the roots listed in the header, which must not be empty
+   */
+  public static InputStream stream(List<Cid> roots, List<Pair<Cid, byte[]>> blocks) {
+    if (roots.isEmpty()) throw new IllegalArgumentException("A CAR needs at least one root");
+    Iterator<Pair<Cid, byte[]>> remaining = blocks.iterator();
+    Enumeration<InputStream> sections =
+        new Enumeration<InputStream>() {
+          InputStream next = new ByteArrayInputStream(header(roots));
+          byte[] pendingData;
+
+          @Override
+          public boolean hasMoreElements() {
+            return next != null || pendingData != null || remaining.hasNext();
+          }
+
+          @Override
+          public InputStream nextElement() {
+            if (next != null) {
+              InputStream res = next;
+              next = null;
+              return res;
+            }
+            if (pendingData != null) {
+              InputStream res = new ByteArrayInputStream(pendingData);
+              pendingData = null;
+              return res;
+            }
+            if (!remaining.hasNext()) throw new NoSuchElementException();
+            Pair<Cid, byte[]> block = remaining.next();
+            byte[] cid = block.left.toBytes();
+            ByteArrayOutputStream prefix = new ByteArrayOutputStream(cid.length + 10);
+            Varint.write(prefix, cid.length + (long) block.right.length);
+            prefix.write(cid, 0, cid.length);
+            pendingData = block.right;
+            return new ByteArrayInputStream(prefix.toByteArray());
+          }
+        };
+    return new SequenceInputStream(sections);
+  }
+
+  /** The number of bytes a block occupies in a CAR, including its framing. */
+  public static long sectionLength(Cid cid, byte[] data) {
+    long length = cid.toBytes().length + (long) data.length;
+    return Varint.size(length) + length;
+  }
+
+  /**
+   * Reads a CARv1 stream one block at a time, so that memory use is bounded by the largest block
+   * rather than the size of the archive.
+   */
+  public static class Reader implements Closeable {
+    /** Sections larger than this are rejected rather than buffered. */
+    static final int MAX_SECTION_SIZE = 64 * 1024 * 1024;
+
+    public final List<Cid> roots;
+    private final InputStream in;
+    private final boolean verify;
+
+    /**
+     * @param verify whether to check that each block hashes to its CID, which is supported for
+     *     sha2-256 and identity multihashes
+     */
+    public Reader(InputStream in, boolean verify) throws IOException {
+      this.in = in;
+      this.verify = verify;
+      byte[] header = readSection();
+      if (header == null) throw new EOFException("Empty CAR");
+      CborObject parsed = CborObject.fromByteArray(header);
+      if (!(parsed instanceof CborObject.CborMap))
+        throw new IllegalStateException("Invalid CAR header");
+      CborObject.CborMap map = (CborObject.CborMap) parsed;
+      CborObject version = map.values.get(new CborObject.CborString("version"));
+      if (!(version instanceof CborObject.CborLong) || ((CborObject.CborLong) version).value != 1)
+        throw new IllegalStateException("Unsupported CAR version: " + version);
+      CborObject rootList = map.values.get(new CborObject.CborString("roots"));
+      if (!(rootList instanceof CborObject.CborList))
+        throw new IllegalStateException("Invalid CAR roots: " + rootList);
+      List<Cid> roots = new ArrayList<>();
+      for (CborObject root : ((CborObject.CborList) rootList).value)
+        roots.add((Cid) ((CborObject.CborMerkleLink) root).target);
+      this.roots = Collections.unmodifiableList(roots);
+    }
+
+    /** The next block and its CID, or null at the end of the archive. */
+    public Pair<Cid, byte[]> next() throws IOException {
+      byte[] section = readSection();
+      if (section == null) return null;
+      int cidLength = cidLength(section);
+      Cid cid = Cid.cast(Arrays.copyOfRange(section, 0, cidLength));
+      byte[] data = Arrays.copyOfRange(section, cidLength, section.length);
+      if (verify) verify(cid, data);
+      return new Pair<>(cid, data);
+    }
+
+    @Override
+    public void close() throws IOException {
+      in.close();
+    }
+
+    private byte[] readSection() throws IOException {
+      long length = Varint.read(in);
+      if (length < 0) return null;
+      if (length > MAX_SECTION_SIZE)
+        throw new IOException("CAR section of " + length + " bytes is too large");
+      byte[] section = new byte[(int) length];
+      int read = 0;
+      while (read < section.length) {
+        int r = in.read(section, read, section.length - read);
+        if (r < 0) throw new EOFException("Truncated CAR section");
+        read += r;
+      }
+      return section;
+    }
+
+    private static int cidLength(byte[] section) {
+      if (section.length >= 34 && section[0] == 0x12 && section[1] == 0x20) return 34; // CIDv0
+      int offset = 0;
+      for (int i = 0; i < 3; i++) offset = (int) Varint.read(section, offset)[1];
+      long[] digestLength = Varint.read(section, offset);
+      long end = digestLength[1] + digestLength[0];
+      if (end > section.length) throw new IllegalStateException("Invalid CID in CAR section");
+      return (int) end;
+    }
+
+    private static void verify(Cid cid, byte[] data) {
+      byte[] expected;
+      if (cid.getType() == Multihash.Type.sha2_256) expected = Sha256.digest(data);
+      else if (cid.getType() == Multihash.Type.id) expected = data;
+      else throw new IllegalStateException("Cannot verify a " + cid.getType() + " hash");
+      if (!Arrays.equals(expected, cid.getHash()))
+        throw new IllegalStateException("Block does not match its CID " + cid);
+    }
+  }
+
+  /** The varint prefixed dag-cbor header: {"roots": [...], "version": 1}. */
+  static byte[] header(List<Cid> roots) {
+    SortedMap<CborObject, CborObject> header = new TreeMap<>();
+    header.put(
+        new CborObject.CborString("roots"),
+        new CborObject.CborList(
+            roots.stream()
+                .map(root -> (CborObject) new CborObject.CborMerkleLink(root))
+                .collect(Collectors.toList())));
+    header.put(new CborObject.CborString("version"), new CborObject.CborLong(1));
+    byte[] encoded = new CborObject.CborMap(header).toByteArray();
+    ByteArrayOutputStream out = new ByteArrayOutputStream(encoded.length + 2);
+    Varint.write(out, encoded.length);
+    out.write(encoded, 0, encoded.length);
+    return out.toByteArray();
+  }
+}
@@ -0,0 +1,410 @@
+package io.ipfs.api;
+
+import io.ipfs.api.cbor.CborObject;
+import io.ipfs.api.cbor.Cborable;
+import io.ipfs.cid.Cid;
+import io.ipfs.multihash.Multihash;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Transcodes between DAG-JSON and dag-cbor locally, so objects can be stored as binary CBOR with
+ * dag/put. Links are {"/": cid} and bytes are {"/": {"bytes": base64}}. Bytes are written as
+ * unpadded standard base64, and map keys in the order of their UTF-8 bytes, so the output is
+ * canonical DAG-JSON.
+ */
+public final class DagJson {
+
+  private DagJson() {}
+
+  public static CborObject parse(byte[] json) {
+    return parse(new String(json, StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Parse DAG-JSON text. Integers become {@link CborObject.CborLong} and numbers with a fraction or
+   * exponent {@link CborObject.CborDouble}.
+   *
+   * @throws IllegalStateException if json is not valid DAG-JSON
+   */
+  public static CborObject parse(String json) {
+    Parser parser = new Parser(json);
+    CborObject res = parser.value();
+    if (parser.skipSpaces() != -1) throw parser.error("Trailing data");
+    return res;
+  }
+
+  /**
+   * Convert a JSON value held as Java objects, as built by hand or returned from {@link
+   * JSONParser}: maps, lists, strings, numbers, booleans and null. Byte arrays, {@link Multihash}es
+   * and {@link Cborable}s are also accepted.
+   */
+  public static CborObject fromJSON(Object json) {
+    if (json == null) return new CborObject.CborNull();
+    if (json instanceof CborObject) return (CborObject) json;
+    if (json instanceof Cborable) return ((Cborable) json).toCbor();
+    if (json instanceof String) return new CborObject.CborString((String) json);
+    if (json instanceof Boolean) return new CborObject.CborBoolean((Boolean) json);
+    if (json instanceof Integer
+        || json instanceof Long
+        || json instanceof Short
+        || json instanceof Byte) return new CborObject.CborLong(((Number) json).longValue());
+    if (json instanceof BigInteger) {
+      try {
+        return new CborObject.CborLong(((BigInteger) json).longValueExact());
+      } catch (ArithmeticException e) {
+        throw new IllegalArgumentException("Integer out of range: " + json);
+      }
+    }
+    if (json instanceof Double || json instanceof Float || json instanceof BigDecimal)
+      return new CborObject.CborDouble(((Number) json).doubleValue());
+    if (json instanceof byte[]) return new CborObject.CborByteArray((byte[]) json);
+    if (json instanceof Multihash) return new CborObject.CborMerkleLink((Multihash) json);
+    if (json instanceof List) {
+      List<CborObject> res = new ArrayList<>();
+      for (Object item : (List<?>) json) res.add(fromJSON(item));
+      return new CborObject.CborList(res);
+    }
+    if (json instanceof Map) {
+      Map<String, CborObject> res = new LinkedHashMap<>();
+      for (Map.Entry<?, ?> e : ((Map<?, ?>) json).entrySet())
+        res.put(e.getKey().toString(), fromJSON(e.getValue()));
+      return special(res);
+    }
+    throw new IllegalArgumentException("Not a JSON value: " + json.getClass().getName());
+  }
+
+  /** The canonical DAG-JSON text of a dag-cbor value. */
+  public static String toString(CborObject cbor) {
+    StringBuilder res = new StringBuilder();
+    write(cbor, res);
+    return res.toString();
+  }
+
+  public static byte[] toBytes(CborObject cbor) {
+    return toString(cbor).getBytes(StandardCharsets.UTF_8);
+  }
+
+  /** A map, or the link or bytes it stands for if its only key is "/". */
+  private static CborObject special(Map<String, CborObject> map) {
+    if (map.size() != 1 || !map.containsKey("/")) return CborObject.CborMap.build(map);
+    CborObject value = map.get("/");
+    if (value instanceof CborObject.CborString)
+      return new CborObject.CborMerkleLink(Cid.decode(((CborObject.CborString) value).value));
+    if (value instanceof CborObject.CborMap) {
+      Map<CborObject, CborObject> inner = ((CborObject.CborMap) value).values;
+      CborObject bytes = inner.get(new CborObject.CborString("bytes"));
+      if (inner.size() == 1 && bytes instanceof CborObject.CborString) {
+        try {
+          return new CborObject.CborByteArray(
+              Base64.getDecoder().decode(padded(((CborObject.CborString) bytes).value)));
+        } catch (IllegalArgumentException e) {
+          throw new IllegalStateException("Invalid base64 bytes in DAG-JSON", e);
+        }
+      }
+    }
+    throw new IllegalStateException("Invalid DAG-JSON link or bytes: " + value);
+  }
+
+  private static String padded(String base64) {
+    switch (base64.length() % 4) {
+      case 2:
+        return base64 + "==";
+      case 3:
+        return base64 + "=";
+      default:
+        return base64;
+    }
+  }
+
+  private static void write(CborObject cbor, StringBuilder out) {
+    if (cbor instanceof CborObject.CborMap) {
+      Map<CborObject, CborObject> values = ((CborObject.CborMap) cbor).values;
+      List<byte[]> keys = new ArrayList<>(values.size());
+      Map<String, CborObject> byKey = new LinkedHashMap<>();
+      for (Map.Entry<CborObject, CborObject> e : values.entrySet()) {
+        if (!(e.getKey() instanceof CborObject.CborString))
+          throw new IllegalStateException("DAG-JSON map keys must be strings: " + e.getKey());
+        String key = ((CborObject.CborString) e.getKey()).value;
+        keys.add(key.getBytes(StandardCharsets.UTF_8));
+        byKey.put(key, e.getValue());
+      }
+      if (byKey.size() == 1 && byKey.containsKey("/"))
+        throw new IllegalStateException("A map with the single key \"/\" has no DAG-JSON form");
+      keys.sort(Arrays::compareUnsigned);
+      out.append('{');
+      for (int i = 0; i < keys.size(); i++) {
+        if (i > 0) out.append(',');
+        String key = new String(keys.get(i), StandardCharsets.UTF_8);
+        writeString(key, out);
+        out.append(':');
+        write(byKey.get(key), out);
+      }
+      out.append('}');
+    } else if (cbor instanceof CborObject.CborList) {
+      out.append('[');
+      List<CborObject> items = ((CborObject.CborList) cbor).value;
+      for (int i = 0; i < items.size(); i++) {
+        if (i > 0) out.append(',');
+        write(items.get(i), out);
+      }
+      out.append(']');
+    } else if (cbor instanceof CborObject.CborString) {
+      writeString(((CborObject.CborString) cbor).value, out);
+    } else if (cbor instanceof CborObject.CborLong) {
+      out.append(((CborObject.CborLong) cbor).value);
+    } else if (cbor instanceof CborObject.CborDouble) {
+      double value = ((CborObject.CborDouble) cbor).value;
+      if (Double.isNaN(value) || Double.isInfinite(value))
+        throw new IllegalStateException("DAG-JSON cannot represent " + value);
+      out.append(value);
+    } else if (cbor instanceof CborObject.CborBoolean) {
+      out.append(((CborObject.CborBoolean) cbor).value);
+    } else if (cbor instanceof CborObject.CborNull) {
+      out.append("null");
+    } else if (cbor instanceof CborObject.CborByteArray) {
+      out.append("{\"/\":{\"bytes\":\"")
+          .append(
+              Base64.getEncoder()
+                  .withoutPadding()
+                  .encodeToString(((CborObject.CborByteArray) cbor).value))
+          .append("\"}}");
+    } else if (cbor instanceof CborObject.CborMerkleLink) {
+      out.append("{\"/\":\"").append(((CborObject.CborMerkleLink) cbor).target).append("\"}");
+    } else {
+      throw new IllegalStateException("No DAG-JSON form for " + cbor);
+    }
+  }
+
+  private static void writeString(String s, StringBuilder out) {
+    out.append('"');
+    for (int i = 0; i < s.length(); i++) {
+      char ch = s.charAt(i);
+      switch (ch) {
+        case '"':
+          out.append("\\\"");
+          break;
+        case '\\':
+          out.append("\\\\");
+          break;
+        case '\b':
+          out.append("\\b");
+          break;
+        case '\f':
+          out.append("\\f");
+          break;
+        case '\n':
+          out.append("\\n");
+          break;
+        case '\r':
+          out.append("\\r");
+          break;
+        case '\t':
+          out.append("\\t");
+          break;
+        default:
+          if (ch < 0x20) out.append(String.format("\\u%04x", (int) ch));
+          else out.append(ch);
+      }
+    }
+    out.append('"');
+  }
+
+  /** A strict recursive descent parser of RFC 8259 JSON. */
+  private static final class Parser {
+    private final String json;
+    private int pos;
+
+    Parser(String json) {
+      this.json = json;
+    }
+
+    IllegalStateException error(String message) {
+      return new IllegalStateException(message + " in DAG-JSON at " + pos);
+    }
+
+    /** The next non-space character, without consuming it, or -1 at the end. */
+    int skipSpaces() {
+      while (pos < json.length()) {
+        char ch = json.charAt(pos);
+        if (ch != ' ' && ch != '\t' && ch != '\n' && ch != '\r') return ch;
+        pos++;
+      }
+      return -1;
+    }
+
+    private void expect(char ch) {
+      if (skipSpaces() != ch) throw error("Expected '" + ch + "'");
+      pos++;
+    }
+
+    CborObject value() {
+      int ch = skipSpaces();
+      switch (ch) {
+        case '{':
+          return object();
+        case '[':
+          return array();
+        case '"':
+          return new CborObject.CborString(string());
+        case 't':
+          literal("true");
+          return new CborObject.CborBoolean(true);
+        case 'f':
+          literal("false");
+          return new CborObject.CborBoolean(false);
+        case 'n':
+          literal("null");
+          return new CborObject.CborNull();
+        default:
+          if (ch == '-' || (ch >= '0' && ch <= '9')) return number();
+          throw error(ch == -1 ? "Unexpected end" : "Unexpected character");
+      }
+    }
+
+    private void literal(String word) {
+      if (!json.startsWith(word, pos)) throw error("Expected " + word);
+      pos += word.length();
+    }
+
+    private CborObject object() {
+      pos++;
+      Map<String, CborObject> res = new LinkedHashMap<>();
+      if (skipSpaces() == '}') {
+        pos++;
+        return special(res);
+      }
+      while (true) {
+        if (skipSpaces() != '"') throw error("Expected a key");
+        String key = string();
+        expect(':');
+        if (res.put(key, value()) != null) throw error("Duplicate key \"" + key + "\"");
+        int ch = skipSpaces();
+        pos++;
+        if (ch == '}') return special(res);
+        if (ch != ',') throw error("Expected ',' or '}'");
+      }
+    }
+
+    private CborObject array() {
+      pos++;
+      List<CborObject> res = new ArrayList<>();
+      if (skipSpaces() == ']') {
+        pos++;
+        return new CborObject.CborList(res);
+      }
+      while (true) {
+        res.add(value());
+        int ch = skipSpaces();
+        pos++;
+        if (ch == ']') return new CborObject.CborList(res);
+        if (ch != ',') throw error("Expected ',' or ']'");
+      }
+    }
+
+    private String string() {
+      pos++;
+      StringBuilder res = null;
+      int start = pos;
+      while (pos < json.length()) {
+        char ch = json.charAt(pos);
+        if (ch == '"') {
+          String tail = json.substring(start, pos++);
+          return res == null ? tail : res.append(tail).toString();
+        }
+        if (ch < 0x20) throw error("Control character in string");
+        if (ch != '\\') {
+          pos++;
+          continue;
+        }
+        if (res == null) res = new StringBuilder();
+        res.append(json, start, pos);
+        if (++pos >= json.length()) break;
+        char escape = json.charAt(pos++);
+        switch (escape) {
+          case '"':
+          case '\\':
+          case '/':
+            res.append(escape);
+            break;
+          case 'b':
+            res.append('\b');
+            break;
+          case 'f':
+            res.append('\f');
+            break;
+          case 'n':
+            res.append('\n');
+            break;
+          case 'r':
+            res.append('\r');
+            break;
+          case 't':
+            res.append('\t');
+            break;
+          case 'u':
+            if (pos + 4 > json.length()) throw error("Truncated escape");
+            int code = 0;
+            for (int i = 0; i < 4; i++) {
+              char c = json.charAt(pos + i);
+              int digit =
+                  c >= '0' && c <= '9'
+                      ? c - '0'
+                      : c >= 'a' && c <= 'f'
+                          ? c - 'a' + 10
+                          : c >= 'A' && c <= 'F' ? c - 'A' + 10 : -1;
+              if (digit < 0) throw error("Invalid escape");
+              code = code * 16 + digit;
+            }
+            res.append((char) code);
+            pos += 4;
+            break;
+          default:
+            throw error("Invalid escape");
+        }
+        start = pos;
+      }
+      throw error("Unterminated string");
+    }
+
+    private CborObject number() {
+      int start = pos;
+      if (json.charAt(pos) == '-') pos++;
+      int integer = pos;
+      int length = digits();
+      if (length == 0 || (length > 1 && json.charAt(integer) == '0')) throw error("Invalid number");
+      boolean integral = true;
+      if (pos < json.length() && json.charAt(pos) == '.') {
+        pos++;
+        integral = false;
+        if (digits() == 0) throw error("Invalid number");
+      }
+      if (pos < json.length() && (json.charAt(pos) == 'e' || json.charAt(pos) == 'E')) {
+        pos++;
+        integral = false;
+        if (pos < json.length() && (json.charAt(pos) == '+' || json.charAt(pos) == '-')) pos++;
+        if (digits() == 0) throw error("Invalid number");
+      }
+      String number = json.substring(start, pos);
+      if (!integral) return new CborObject.CborDouble(Double.parseDouble(number));
+      try {
+        return new CborObject.CborLong(Long.parseLong(number));
+      } catch (NumberFormatException e) {
+        throw error("Integer out of range");
+      }
+    }
+
+    private int digits() {
+      int start = pos;
+      while (pos < json.length() && json.charAt(pos) >= '0' && json.charAt(pos) <= '9') pos++;
+      return pos - start;
+    }
+  }
+}
@@ -0,0 +1,362 @@
+package io.ipfs.api;
+
+import io.ipfs.multihash.Multihash;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+/**
+ * A persistent cache of immutable content, kept in memory mapped segment files in a directory so
+ * that it survives restarts. It is meant as a second tier behind a {@link BlockCache}, installed
+ * with {@link IPFS#diskBlockCache(DiskBlockCache)}.
+ *
+ * <p>Entries are appended to the newest segment as CRC checked records. The index from key hash to
+ * segment and offset is an open addressing table held off-heap, rebuilt on open by scanning the
+ * segments. On open, records in the newest segment are verified and a torn tail left by a crash is
+ * discarded. When the cache outgrows its size bound, the oldest segment is deleted as a whole.
+ */
+public class DiskBlockCache implements Closeable {
+
+  public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+  private static final long SEGMENT_MAGIC = 0x4a49504653424331L; // "JIPFSBC1"
+  private static final int SEGMENT_HEADER = 8;
+  private static final int RECORD_HEADER = 12; // key length, value length, crc32
+  private static final int SLOT_SIZE = 16; // key hash, segment id, offset
+  private static final String SUFFIX = ".seg";
+
+  private final Path dir;
+  private final int segmentSize;
+  private final int maxSegments;
+  private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+  private final TreeMap<Integer, Segment> segments = new TreeMap<>();
+  private Segment active;
+  private ByteBuffer index;
+  private int indexed;
+  private boolean closed;
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+
+  public DiskBlockCache(Path dir, long maxBytes) throws IOException {
+    this(dir, maxBytes, DEFAULT_SEGMENT_SIZE);
+  }
+
+  /**
+   * Open the cache in dir, creating it if necessary.
+   *
+   * @param maxBytes the size of the segment files to keep, at least two segments are kept
+   * @param segmentSize the size of each segment file, which bounds the largest cacheable entry
+   */
+  public DiskBlockCache(Path dir, long maxBytes, int segmentSize) throws IOException {
+    if (segmentSize <= SEGMENT_HEADER + RECORD_HEADER)
+      throw new IllegalArgumentException("Segment size is too small: " + segmentSize);
+    this.dir = dir;
+    this.segmentSize = segmentSize;
+    this.maxSegments = (int) Math.max(2, Math.min(Integer.MAX_VALUE, maxBytes / segmentSize));
+    this.index = ByteBuffer.allocateDirect(1024 * SLOT_SIZE);
+    Files.createDirectories(dir);
+
+    TreeMap<Integer, Path> files = new TreeMap<>();
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "*" + SUFFIX)) {
+      for (Path file : stream) {
+        String name = file.getFileName().toString();
+        try {
+          files.put(Integer.parseInt(name.substring(0, name.length() - SUFFIX.length())), file);
+        } catch (NumberFormatException e) {
+          // not one of ours
+        }
+      }
+    }
+    for (Map.Entry<Integer, Path> file : files.entrySet()) {
+      Segment segment = new Segment(file.getKey(), file.getValue(), segmentSize);
+      segments.put(segment.id, segment);
+      segment.scan(file.getKey().equals(files.lastKey()), this::insert);
+    }
+    if (segments.isEmpty()) roll();
+    else active = segments.lastEntry().getValue();
+    while (segments.size() > maxSegments) evictOldest();
+  }
+
+  /** A copy of the cached block with this multihash, if present. */
+  public Optional<byte[]> get(Multihash hash) {
+    return lookup(BlockCache.key(hash).toBytes());
+  }
+
+  public void put(Multihash hash, byte[] block) throws IOException {
+    store(BlockCache.key(hash).toBytes(), block);
+  }
+
+  /** The number of cached entries. */
+  public int size() {
+    lock.readLock().lock();
+    try {
+      return indexed;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  public long hits() {
+    return hits.sum();
+  }
+
+  public long misses() {
+    return misses.sum();
+  }
+
+  /** The number of segments deleted to stay within the size bound. */
+  public long evictions() {
+    return evictions.sum();
+  }
+
+  Optional<byte[]> lookup(byte[] key) {
+    long hash = hash(key);
+    lock.readLock().lock();
+    try {
+      int slots = index.capacity() / SLOT_SIZE;
+      for (int i = (int) (hash & (slots - 1)); !closed; i = (i + 1) & (slots - 1)) {
+        long slotHash = index.getLong(i * SLOT_SIZE);
+        if (slotHash == 0) break;
+        if (slotHash != hash) continue;
+        Segment segment = segments.get(index.getInt(i * SLOT_SIZE + 8));
+        byte[] value = segment.read(index.getInt(i * SLOT_SIZE + 12), key);
+        if (value != null) {
+          hits.increment();
+          return Optional.of(value);
+        }
+      }
+    } finally {
+      lock.readLock().unlock();
+    }
+    misses.increment();
+    return Optional.empty();
+  }
+
+  /** Append an entry, unless the key is already present or the entry exceeds a segment. */
+  void store(byte[] key, byte[] value) throws IOException {
+    long length = (long) RECORD_HEADER + key.length + value.length;
+    if (length > segmentSize - SEGMENT_HEADER) return;
+    lock.writeLock().lock();
+    try {
+      if (closed) throw new IOException("Disk block cache is closed");
+      if (contains(key)) return;
+      if (active.writeOffset + length > segmentSize) roll();
+      int offset = active.append(key, value);
+      insert(active.id, offset, hash(key));
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /** Flush all segments to disk and close them. Later lookups miss and stores fail. */
+  @Override
+  public void close() throws IOException {
+    lock.writeLock().lock();
+    try {
+      if (closed) return;
+      closed = true;
+      indexed = 0;
+      for (Segment segment : segments.values()) segment.close();
+      segments.clear();
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  private boolean contains(byte[] key) {
+    long hash = hash(key);
+    int slots = index.capacity() / SLOT_SIZE;
+    for (int i = (int) (hash & (slots - 1)); ; i = (i + 1) & (slots - 1)) {
+      long slotHash = index.getLong(i * SLOT_SIZE);
+      if (slotHash == 0) return false;
+      if (slotHash == hash
+          && segments
+                  .get(index.getInt(i * SLOT_SIZE + 8))
+                  .read(index.getInt(i * SLOT_SIZE + 12), key)
+              != null) return true;
+    }
+  }
+
+  private void insert(int segment, int offset, long hash) {
+    int slots = index.capacity() / SLOT_SIZE;
+    if ((indexed + 1) * 10L > slots * 7L) {
+      rebuildIndex(slots * 2, -1);
+      slots *= 2;
+    }
+    int i = (int) (hash & (slots - 1));
+    while (index.getLong(i * SLOT_SIZE) != 0) i = (i + 1) & (slots - 1);
+    index.putLong(i * SLOT_SIZE, hash);
+    index.putInt(i * SLOT_SIZE + 8, segment);
+    index.putInt(i * SLOT_SIZE + 12, offset);
+    indexed++;
+  }
+
+  /** Rehash every entry into a table of the given size, leaving out those of one segment. */
+  private void rebuildIndex(int slots, int droppedSegment) {
+    ByteBuffer old = index;
+    int oldSlots = old.capacity() / SLOT_SIZE;
+    index = ByteBuffer.allocateDirect(slots * SLOT_SIZE);
+    indexed = 0;
+    for (int i = 0; i < oldSlots; i++) {
+      long hash = old.getLong(i * SLOT_SIZE);
+      int segment = old.getInt(i * SLOT_SIZE + 8);
+      if (hash == 0 || segment == droppedSegment) continue;
+      insert(segment, old.getInt(i * SLOT_SIZE + 12), hash);
+    }
+  }
+
+  private void roll() throws IOException {
+    if (active != null) active.map.force();
+    int id = segments.isEmpty() ? 0 : segments.lastKey() + 1;
+    active = new Segment(id, dir.resolve(String.format("%08d", id) + SUFFIX), segmentSize);
+    active.scan(true, (s, o, h) -> {});
+    segments.put(id, active);
+    while (segments.size() > maxSegments) evictOldest();
+  }
+
+  private void evictOldest() throws IOException {
+    Segment oldest = segments.pollFirstEntry().getValue();
+    oldest.close();
+    Files.deleteIfExists(oldest.path);
+    rebuildIndex(index.capacity() / SLOT_SIZE, oldest.id);
+    evictions.increment();
+  }
+
+  /** FNV-1a with a final avalanche, never 0 as that marks an empty slot. */
+  private static long hash(byte[] key) {
+    long h = 0xcbf29ce484222325L;
+    for (byte b : key) {
+      h ^= b & 0xFF;
+      h *= 0x100000001b3L;
+    }
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    return h == 0 ? 1 : h;
+  }
+
+  private interface RecordConsumer {
+    void accept(int segment, int offset, long hash);
+  }
+
+  private static final class Segment {
+    final int id;
+    final Path path;
+    final FileChannel channel;
+    final MappedByteBuffer map;
+    int writeOffset;
+
+    Segment(int id, Path path, int size) throws IOException {
+      this.id = id;
+      this.path = path;
+      this.channel =
+          FileChannel.open(
+              path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+      boolean created = channel.size() == 0;
+      this.map = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+      if (created) map.putLong(0, SEGMENT_MAGIC);
+      else if (map.getLong(0) != SEGMENT_MAGIC) {
+        channel.close();
+        throw new IllegalStateException("Not a block cache segment: " + path);
+      }
+    }
+
+    /**
+     * Index every record, stopping at the first unwritten one. When verifying, records are checked
+     * against their CRC and anything from the first bad one on is cleared.
+     */
+    void scan(boolean verify, RecordConsumer records) {
+      ByteBuffer buf = map.duplicate();
+      int pos = SEGMENT_HEADER;
+      CRC32 crc = new CRC32();
+      while (pos + RECORD_HEADER <= buf.capacity()) {
+        int keyLength = buf.getInt(pos);
+        int valueLength = buf.getInt(pos + 4);
+        if (keyLength <= 0
+            || valueLength < 0
+            || (long) pos + RECORD_HEADER + keyLength + valueLength > buf.capacity()) break;
+        int dataStart = pos + RECORD_HEADER;
+        if (verify) {
+          buf.limit(dataStart + keyLength + valueLength).position(dataStart);
+          crc.reset();
+          crc.update(buf);
+          buf.clear();
+          if ((int) crc.getValue() != buf.getInt(pos + 8)) break;
+        }
+        byte[] key = new byte[keyLength];
+        buf.position(dataStart);
+        buf.get(key);
+        records.accept(id, pos, hash(key));
+        pos = dataStart + keyLength + valueLength;
+      }
+      // a record torn before its header was written leaves data behind a zero header
+      if (verify && clear(buf, pos)) map.force();
+      writeOffset = pos;
+    }
+
+    /** Zero everything from offset on, returning whether anything was not already zero. */
+    private static boolean clear(ByteBuffer buf, int offset) {
+      boolean dirty = false;
+      int i = offset;
+      for (; i + 8 <= buf.capacity(); i += 8)
+        if (buf.getLong(i) != 0) {
+          buf.putLong(i, 0);
+          dirty = true;
+        }
+      for (; i < buf.capacity(); i++)
+        if (buf.get(i) != 0) {
+          buf.put(i, (byte) 0);
+          dirty = true;
+        }
+      return dirty;
+    }
+
+    /** The value of the record at offset, if its key matches. */
+    byte[] read(int offset, byte[] key) {
+      ByteBuffer buf = map.duplicate();
+      int keyLength = buf.getInt(offset);
+      if (keyLength != key.length) return null;
+      byte[] storedKey = new byte[keyLength];
+      buf.position(offset + RECORD_HEADER);
+      buf.get(storedKey);
+      if (!Arrays.equals(storedKey, key)) return null;
+      byte[] value = new byte[buf.getInt(offset + 4)];
+      buf.get(value);
+      return value;
+    }
+
+    int append(byte[] key, byte[] value) {
+      CRC32 crc = new CRC32();
+      crc.update(key);
+      crc.update(value);
+      int offset = writeOffset;
+      ByteBuffer buf = map.duplicate();
+      buf.position(offset + RECORD_HEADER);
+      buf.put(key).put(value);
+      buf.putInt(offset + 8, (int) crc.getValue());
+      buf.putInt(offset + 4, value.length);
+      buf.putInt(offset, key.length);
+      writeOffset = buf.position();
+      return offset;
+    }
+
+    void close() throws IOException {
+      map.force();
+      channel.close();
+    }
+  }
+}
@@ -1,5 +1,6 @@
 package io.ipfs.api;
 
+import io.ipfs.api.cbor.CborObject;
 import io.ipfs.cid.Cid;
 import io.ipfs.multiaddr.MultiAddress;
 import io.ipfs.multibase.Multibase;
@@ -12,18 +13,32 @@ import java.net.ConnectException;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -50,6 +65,8 @@ public class IPFS {
       Arrays.asList("add-link", "rm-link", "set-data", "append-data");
   private static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = 10_000;
   private static final int DEFAULT_READ_TIMEOUT_MILLIS = 60_000;
+  private static final long DEFAULT_MAX_IMPORT_BYTES = 256 * 1024 * 1024;
+  private static final int TRANSFER_BUFFER_SIZE = 1024 * 1024;
 
   public final String host;
   public final int port;
@@ -57,6 +74,11 @@ public class IPFS {
   private final String apiVersion;
   private final int connectTimeoutMillis;
   private final int readTimeoutMillis;
+  private volatile BlockCache blockCache;
+  private volatile DiskBlockCache diskBlockCache;
+  private volatile ListingCache listingCache;
+  private volatile IpnsCache ipnsCache;
+  private volatile PathCache pathCache;
   public final Key key = new Key();
   public final Log log = new Log();
   public final MultibaseAPI multibase = new MultibaseAPI();
@@ -173,6 +195,62 @@ public class IPFS {
     return new IPFS(host, port, apiVersion, timeout, timeout, protocol.equals("https"));
   }
 
+  /**
+   * Configure an in-memory cache for immutable reads: block/get, dag/get and cat.
+   *
+   * @param cache the cache to use, or null to disable caching
+   * @return current IPFS object with the cache installed
+   */
+  public IPFS blockCache(BlockCache cache) {
+    this.blockCache = cache;
+    return this;
+  }
+
+  /**
+   * Configure a persistent second tier cache for block/get and dag/get, consulted after the
+   * in-memory cache and before the daemon. Its entries are not dropped by {@link Block#rm}.
+   *
+   * @param cache the cache to use, or null to disable it
+   * @return current IPFS object with the cache installed
+   */
+  public IPFS diskBlockCache(DiskBlockCache cache) {
+    this.diskBlockCache = cache;
+    return this;
+  }
+
+  /**
+   * Configure a cache for the immutable link listings of ls and object/links.
+   *
+   * @param cache the cache to use, or null to disable it
+   * @return current IPFS object with the cache installed
+   */
+  public IPFS listingCache(ListingCache cache) {
+    this.listingCache = cache;
+    return this;
+  }
+
+  /**
+   * Configure a cache for name/resolve.
+   *
+   * @param cache the cache to use, or null to disable it
+   * @return current IPFS object with the cache installed
+   */
+  public IPFS ipnsCache(IpnsCache cache) {
+    this.ipnsCache = cache;
+    return this;
+  }
+
+  /**
+   * Configure a cache for dag/resolve and resolve.
+   *
+   * @param cache the cache to use, or null to disable it
+   * @return current IPFS object with the cache installed
+   */
+  public IPFS pathCache(PathCache cache) {
+    this.pathCache = cache;
+    return this;
+  }
+
   public String shutdown() throws IOException {
     return retrieveString("shutdown");
   }
@@ -192,28 +270,9 @@ public class IPFS {
 
   public List<MerkleNode> add(List<NamedStreamable> files, boolean wrap, boolean hashOnly)
       throws IOException {
-    Multipart m =
-        new Multipart(
-            protocol
-                + "://"
-                + host
-                + ":"
-                + port
-                + apiVersion
-                + "add?stream-channels=true&w="
-                + wrap
-                + "&n="
-                + hashOnly,
-            "UTF-8");
-    for (NamedStreamable file : files) {
-      if (file.isDirectory()) {
-        m.addSubtree(Paths.get(""), file);
-      } else m.addFilePart("file", Paths.get(""), file);
-    }
-    String res = m.finish();
-    return JSONParser.parseStream(res).stream()
-        .map(x -> MerkleNode.fromJSON((Map<String, Object>) x))
-        .collect(Collectors.toList());
+    List<MerkleNode> res = new ArrayList<>();
+    add(files, "w=" + wrap + "&n=" + hashOnly, res::add, null);
+    return res;
   }
 
   public List<MerkleNode> add(NamedStreamable file, AddArgs args) throws IOException {
@@ -221,6 +280,45 @@ public class IPFS {
   }
 
   public List<MerkleNode> add(List<NamedStreamable> files, AddArgs args) throws IOException {
+    List<MerkleNode> res = new ArrayList<>();
+    add(files, args, res::add);
+    return res;
+  }
+
+  /**
+   * Adds the given files, handing each resulting node to the consumer as soon as the daemon reports
+   * it instead of collecting the whole reply in memory first.
+   *
+   * @param files files or directories to add
+   * @param args arguments of the add command
+   * @param results receives every added node, in the order reported by the daemon
+   */
+  public void add(List<NamedStreamable> files, AddArgs args, Consumer<MerkleNode> results)
+      throws IOException {
+    add(files, args.toQueryString(), results, null);
+  }
+
+  /**
+   * Like {@link #add(List, AddArgs, Consumer)}, but also asks the daemon for progress events.
+   *
+   * @param progress receives the name of the file being added and the number of its bytes processed
+   *     so far
+   */
+  public void add(
+      List<NamedStreamable> files,
+      AddArgs args,
+      Consumer<MerkleNode> results,
+      BiConsumer<String, Long> progress)
+      throws IOException {
+    add(files, args.toQueryString(), results, progress);
+  }
+
+  private void add(
+      List<NamedStreamable> files,
+      String query,
+      Consumer<MerkleNode> results,
+      BiConsumer<String, Long> progress)
+      throws IOException {
     Multipart m =
         new Multipart(
             protocol
@@ -229,31 +327,182 @@ public class IPFS {
                 + ":"
                 + port
                 + apiVersion
-                + "add?stream-channels=true&"
-                + args.toQueryString(),
+                + "add?stream-channels=true"
+                + (query.isEmpty() ? "" : "&" + query)
+                + (progress != null ? "&progress=true" : ""),
             "UTF-8");
     for (NamedStreamable file : files) {
       if (file.isDirectory()) {
         m.addSubtree(Paths.get(""), file);
       } else m.addFilePart("file", Paths.get(""), file);
     }
-    String res = m.finish();
-    return JSONParser.parseStream(res).stream()
-        .map(x -> MerkleNode.fromJSON((Map<String, Object>) x))
-        .collect(Collectors.toList());
+    m.finish(
+        line -> {
+          if (line.isEmpty()) return;
+          Map<String, Object> json = (Map<String, Object>) JSONParser.parse(line);
+          // progress events carry a byte count but no hash
+          if (!json.containsKey("Hash") && json.containsKey("Bytes")) {
+            if (progress != null)
+              progress.accept((String) json.get("Name"), ((Number) json.get("Bytes")).longValue());
+          } else results.accept(MerkleNode.fromJSON(json));
+        });
+  }
+
+  /**
+   * Adds a directory by uploading its top level entries concurrently over separate connections and
+   * then assembling the root directory in MFS. The root has the same CID as a single {@link
+   * #add(NamedStreamable, AddArgs)} of the directory with the same arguments.
+   *
+   * <p>Only the top level is split: each sub directory is a single upload, however large, so a
+   * directory whose content is mostly under one sub directory gains little. Add such a sub
+   * directory on its own to parallelise over its entries.
+   *
+   * @param dir the directory to add
+   * @param args arguments of the add command, which must not request only-hash, wrapping or MFS
+   *     output as those are incompatible with the assembly step
+   * @param parallelism maximum number of concurrent add requests
+   * @return the nodes reported for every entry, named relative to the parent of dir, with the root
+   *     last
+   */
+  public List<MerkleNode> addParallel(NamedStreamable dir, AddArgs args, int parallelism)
+      throws IOException {
+    if (!dir.isDirectory()) throw new IllegalArgumentException("Input must be a directory");
+    if (parallelism < 1) throw new IllegalArgumentException("parallelism must be positive");
+    for (String unsupported : Arrays.asList("only-hash", "wrap-with-directory", "to-files"))
+      if (args.get(unsupported).isPresent())
+        throw new IllegalArgumentException(unsupported + " is not supported by a parallel add");
+    String dirName = dir.getName().get();
+
+    // every sub directory is its own upload, loose files are spread over the available slots
+    List<List<NamedStreamable>> shards = new ArrayList<>();
+    List<NamedStreamable> looseFiles = new ArrayList<>();
+    for (NamedStreamable child : dir.getChildren()) {
+      if (child.isDirectory()) shards.add(Collections.singletonList(child));
+      else looseFiles.add(child);
+    }
+    int fileShards = Math.min(parallelism, looseFiles.size());
+    for (int i = 0; i < fileShards; i++) shards.add(new ArrayList<>());
+    for (int i = 0; i < looseFiles.size(); i++)
+      shards.get(shards.size() - fileShards + i % fileShards).add(looseFiles.get(i));
+
+    // the shards are only pinned through the root, as a single add would do, and must report every
+    // entry for the assembly
+    AddArgs shardArgs = args.with("pin", "false").with("quieter", "false").with("silent", "false");
+    ExecutorService pool = Executors.newFixedThreadPool(parallelism);
+    try {
+      List<Future<List<MerkleNode>>> uploads = new ArrayList<>();
+      for (List<NamedStreamable> shard : shards)
+        uploads.add(pool.submit(() -> add(shard, shardArgs)));
+
+      List<MerkleNode> res = new ArrayList<>();
+      String tmp = "/.java-ipfs-http-client/add-" + UUID.randomUUID();
+      files.mkdir(tmp, true, args.get("cid-version").map(Integer::parseInt), args.get("hash"));
+      Throwable failure = null;
+      try {
+        for (int i = 0; i < shards.size(); i++) {
+          Set<String> entries =
+              shards.get(i).stream().map(f -> f.getName().get()).collect(Collectors.toSet());
+          for (MerkleNode node : uploads.get(i).get()) {
+            String name = node.name.orElse("");
+            if (entries.contains(name)) files.cp("/ipfs/" + node.hash, tmp + "/" + name, false);
+            res.add(
+                new MerkleNode(
+                    node.hash.toString(),
+                    Optional.of(dirName + "/" + name),
+                    node.size,
+                    node.largeSize,
+                    node.type,
+                    node.links,
+                    node.data));
+          }
+        }
+        String root = (String) files.stat(tmp).get("Hash");
+        if (!"false".equals(args.get("pin").orElse("true"))) pin.add(Cid.decode(root));
+        res.add(new MerkleNode(root, Optional.of(dirName)));
+        return res;
+      } catch (Throwable t) {
+        failure = t;
+        throw t;
+      } finally {
+        try {
+          files.rm(tmp, true, true);
+        } catch (IOException | RuntimeException e) {
+          // after a success the result stands, and only a scratch directory in MFS is left behind
+          if (failure != null) failure.addSuppressed(e);
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e.getMessage(), e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+      if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+      throw new RuntimeException(e.getCause().getMessage(), e.getCause());
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  /**
+   * Adds a file or directory tree by computing its UnixFS DAG locally and uploading only the blocks
+   * the node does not already have. Content is read a chunk at a time, so unchanged data costs a
+   * block stat per chunk rather than a transfer. The root is pinned, as with {@link #add}.
+   *
+   * @param file the file or directory to add
+   * @param importer the chunking and layout parameters, which determine the resulting CIDs
+   * @return the root node, with the same hash an add with {@link UnixFSImporter#toAddArgs()} gives
+   */
+  public MerkleNode addMissing(NamedStreamable file, UnixFSImporter importer) throws IOException {
+    return addMissing(file, importer, null);
+  }
+
+  /**
+   * Like {@link #addMissing(NamedStreamable, UnixFSImporter)}, but files whose path, size,
+   * modification time and file key match an entry of the index are not read at all, so re-adding a
+   * mostly unchanged tree costs time proportional to the changes.
+   */
+  public MerkleNode addMissing(NamedStreamable file, UnixFSImporter importer, AddIndex index)
+      throws IOException {
+    MerkleNode root =
+        importer.importFile(
+            file,
+            (cid, data) -> {
+              if (block.has(cid)) return;
+              String format =
+                  cid.codec == Cid.Codec.Raw ? "raw" : cid.version == 0 ? "v0" : "protobuf";
+              MerkleNode stored = block.put(data, Optional.of(format));
+              if (!Arrays.equals(stored.hash.getHash(), cid.getHash()))
+                throw new IllegalStateException(
+                    "Block stored as " + stored.hash + " but expected " + cid);
+            },
+            index);
+    pin.add(root.hash);
+    return root;
   }
 
   public List<MerkleNode> ls(Multihash hash) throws IOException {
+    ListingCache cache = listingCache;
+    Object key = new Pair<>("ls", hash);
+    if (cache != null) {
+      Optional<ListingCache.Listing> cached = cache.lookup(key);
+      if (cached.isPresent()) return cached.get().links();
+    }
     Map reply = retrieveMap("ls?arg=" + hash);
-    return ((List<Object>) reply.get("Objects"))
-        .stream()
-            .flatMap(
-                x -> ((List<Object>) ((Map) x).get("Links")).stream().map(MerkleNode::fromJSON))
-            .collect(Collectors.toList());
+    List<Object> links =
+        ((List<Object>) reply.get("Objects"))
+            .stream()
+                .flatMap(x -> ((List<Object>) ((Map) x).get("Links")).stream())
+                .collect(Collectors.toList());
+    if (cache == null) return links.stream().map(MerkleNode::fromJSON).collect(Collectors.toList());
+    ListingCache.Listing listing =
+        ListingCache.Listing.fromJSON(Collections.singletonMap("Links", links));
+    cache.store(key, listing);
+    return listing.links();
   }
 
   public byte[] cat(Multihash hash) throws IOException {
-    return retrieve("cat?arg=" + hash);
+    // the whole CID, as the same multihash can be a raw block or a unixfs file with other content
+    return retrieveCached(new Pair<>("cat", hash.toString()), null, "cat?arg=" + hash);
   }
 
   public byte[] cat(Multihash hash, String subPath) throws IOException {
@@ -268,6 +517,68 @@ public class IPFS {
     return retrieveStream("cat?arg=" + hash);
   }
 
+  /** Read length bytes of a file, starting at offset. */
+  public byte[] cat(Multihash hash, long offset, long length) throws IOException {
+    return retrieve("cat?arg=" + hash + "&offset=" + offset + "&length=" + length);
+  }
+
+  public InputStream catStream(Multihash hash, long offset, long length) throws IOException {
+    return retrieveStream("cat?arg=" + hash + "&offset=" + offset + "&length=" + length);
+  }
+
+  /**
+   * Write the contents of a file to out without buffering it in memory.
+   *
+   * @return the number of bytes written
+   */
+  public long cat(Multihash hash, OutputStream out) throws IOException {
+    return transfer("cat?arg=" + hash, out);
+  }
+
+  public long cat(Multihash hash, WritableByteChannel out) throws IOException {
+    return transfer("cat?arg=" + hash, out);
+  }
+
+  /** Write the contents of a file to target, replacing it if it exists. */
+  public long cat(Multihash hash, Path target) throws IOException {
+    return transfer("cat?arg=" + hash, target);
+  }
+
+  /** Write the tar archive of a file or directory to out without buffering it in memory. */
+  public long get(Multihash hash, OutputStream out) throws IOException {
+    return transfer("get?arg=" + hash, out);
+  }
+
+  public long get(Multihash hash, WritableByteChannel out) throws IOException {
+    return transfer("get?arg=" + hash, out);
+  }
+
+  public long get(Multihash hash, Path target) throws IOException {
+    return transfer("get?arg=" + hash, target);
+  }
+
+  /**
+   * Extract a file or directory into directory as its tar archive arrives, so that memory use does
+   * not depend on the size of the tree.
+   *
+   * @return the number of file bytes written
+   */
+  public long extract(Multihash hash, Path directory) throws IOException {
+    return extract(hash, directory, p -> {}, 1);
+  }
+
+  /**
+   * @param onEntry called with the path of each file, directory or symlink once it is written, from
+   *     a writer thread when parallelism is above 1
+   * @param parallelism the number of threads writing small files while the archive is read
+   */
+  public long extract(Multihash hash, Path directory, Consumer<Path> onEntry, int parallelism)
+      throws IOException {
+    try (InputStream in = retrieveStream("get?arg=" + hash)) {
+      return Tar.extract(in, directory, onEntry, parallelism);
+    }
+  }
+
   public List<Multihash> refs(Multihash hash, boolean recursive) throws IOException {
     String jsonStream = new String(retrieve("refs?arg=" + hash + "&r=" + recursive));
     return JSONParser.parseStream(jsonStream).stream()
@@ -277,7 +588,11 @@ public class IPFS {
   }
 
   public Map resolve(String scheme, Multihash hash, boolean recursive) throws IOException {
-    return retrieveMap("resolve?arg=/" + scheme + "/" + hash + "&r=" + recursive);
+    PathCache cache = pathCache;
+    if (cache == null)
+      return retrieveMap("resolve?arg=/" + scheme + "/" + hash + "&r=" + recursive);
+    return cache.resolve(
+        scheme, hash, recursive, path -> retrieveMap("resolve?arg=" + path + "&r=" + recursive));
   }
 
   public Map mount(java.io.File ipfsRoot, java.io.File ipnsRoot) throws IOException {
@@ -560,19 +875,32 @@ public class IPFS {
      * @param data url encoded data to be published
      */
     public void pub(String topic, String data) {
+      pub(topic, data.getBytes(), false);
+    }
+
+    void pub(String topic, byte[] data, boolean keepAlive) {
       String encodedTopic = Multibase.encode(Multibase.Base.Base64Url, topic.getBytes());
       Multipart m =
           new Multipart(
               protocol + "://" + host + ":" + port + apiVersion + "pubsub/pub?arg=" + encodedTopic,
-              "UTF-8");
+              "UTF-8",
+              keepAlive);
       try {
-        m.addFilePart("file", Paths.get(""), new NamedStreamable.ByteArrayWrapper(data.getBytes()));
+        m.addFilePart("file", Paths.get(""), new NamedStreamable.ByteArrayWrapper(data));
         String res = m.finish();
       } catch (IOException e) {
         throw new RuntimeException(e.getMessage(), e);
       }
     }
 
+    /**
+     * Create an asynchronous publisher for a topic, which sends messages over reused connections
+     * with at most maxInFlight requests outstanding.
+     */
+    public PubsubPublisher publisher(String topic, int maxInFlight) {
+      return new PubsubPublisher(IPFS.this, topic, maxInFlight);
+    }
+
     public Stream<Map<String, Object>> sub(String topic) throws Exception {
       return sub(topic, ForkJoinPool.commonPool());
     }
@@ -632,10 +960,29 @@ public class IPFS {
    */
   public class Block {
     public byte[] get(Multihash hash) throws IOException {
-      return retrieve("block/get?stream-channels=true&arg=" + hash);
+      Multihash key = BlockCache.key(hash);
+      return retrieveCached(key, key.toBytes(), "block/get?stream-channels=true&arg=" + hash);
+    }
+
+    public long get(Multihash hash, OutputStream out) throws IOException {
+      return transfer("block/get?stream-channels=true&arg=" + hash, out);
     }
 
+    public long get(Multihash hash, WritableByteChannel out) throws IOException {
+      return transfer("block/get?stream-channels=true&arg=" + hash, out);
+    }
+
+    public long get(Multihash hash, Path target) throws IOException {
+      return transfer("block/get?stream-channels=true&arg=" + hash, target);
+    }
+
+    /**
+     * Remove a block from the node and the in-memory block cache. A {@link DiskBlockCache} keeps
+     * its copy until the segment holding it is evicted, so get may still return the block.
+     */
     public byte[] rm(Multihash hash) throws IOException {
+      BlockCache cache = blockCache;
+      if (cache != null) cache.invalidate(hash);
       return retrieve("block/rm?stream-channels=true&arg=" + hash);
     }
 
@@ -644,8 +991,7 @@ public class IPFS {
     }
 
     public List<MerkleNode> put(List<byte[]> data, Optional<String> format) throws IOException {
-      // N.B. Once IPFS implements a bulk put this can become a single multipart call with multiple
-      // 'files'
+      // N.B. putBulk sends many blocks in a single dag/import request
       List<MerkleNode> res = new ArrayList<>();
       for (byte[] value : data) {
         res.add(put(value, format));
@@ -654,6 +1000,64 @@ public class IPFS {
     }
 
     public MerkleNode put(byte[] data, Optional<String> format) throws IOException {
+      return put(new NamedStreamable.ByteArrayWrapper(data), format);
+    }
+
+    /**
+     * Put a block whose content is read from the given source, e.g. a {@link
+     * NamedStreamable.MappedFileWrapper} slice, without first copying it into a byte array.
+     */
+    public MerkleNode put(NamedStreamable data, Optional<String> format) throws IOException {
+      return put(data, format, false);
+    }
+
+    /**
+     * Put each block on a pool of parallelism threads, reusing connections between requests.
+     *
+     * @return one future per block, in input order, each of which fails independently
+     */
+    public List<CompletableFuture<MerkleNode>> put(
+        List<byte[]> data, Optional<String> format, int parallelism) {
+      return inParallel(
+          data,
+          parallelism,
+          block -> put(new NamedStreamable.ByteArrayWrapper(block), format, true));
+    }
+
+    /**
+     * Get each block on a pool of parallelism threads, reusing connections between requests.
+     *
+     * @return one future per hash, in input order, each of which fails independently
+     */
+    public List<CompletableFuture<byte[]>> get(List<Multihash> hashes, int parallelism) {
+      return inParallel(
+          hashes,
+          parallelism,
+          hash -> {
+            try {
+              return get(hash);
+            } catch (IOException e) {
+              throw new RuntimeException(e.getMessage(), e);
+            }
+          });
+    }
+
+    private <T, R> List<CompletableFuture<R>> inParallel(
+        List<T> inputs, int parallelism, Function<T, R> task) {
+      if (parallelism < 1) throw new IllegalArgumentException("parallelism must be positive");
+      ExecutorService pool =
+          Executors.newFixedThreadPool(Math.max(1, Math.min(parallelism, inputs.size())));
+      List<CompletableFuture<R>> res =
+          inputs.stream()
+              .map(x -> CompletableFuture.supplyAsync(() -> task.apply(x), pool))
+              .collect(Collectors.toList());
+      CompletableFuture.allOf(res.toArray(new CompletableFuture[0]))
+          .whenComplete((v, e) -> pool.shutdown());
+      return res;
+    }
+
+    private MerkleNode put(NamedStreamable data, Optional<String> format, boolean keepAlive) {
+      if (data.isDirectory()) throw new IllegalArgumentException("Input must be a file");
       String fmt = format.map(f -> "&format=" + f).orElse("");
       Multipart m =
           new Multipart(
@@ -665,9 +1069,10 @@ public class IPFS {
                   + apiVersion
                   + "block/put?stream-channels=true"
                   + fmt,
-              "UTF-8");
+              "UTF-8",
+              keepAlive);
       try {
-        m.addFilePart("file", Paths.get(""), new NamedStreamable.ByteArrayWrapper(data));
+        m.addFilePart("file", Paths.get(""), data);
         String res = m.finish();
         return JSONParser.parseStream(res).stream()
             .map(x -> MerkleNode.fromJSON((Map<String, Object>) x))
@@ -681,6 +1086,102 @@ public class IPFS {
     public Map stat(Multihash hash) throws IOException {
       return retrieveMap("block/stat?stream-channels=true&arg=" + hash);
     }
+
+    public List<Cid> putBulk(List<byte[]> data, Optional<String> format) throws IOException {
+      return putBulk(data, format, DEFAULT_MAX_IMPORT_BYTES);
+    }
+
+    /**
+     * Put many blocks at once by streaming them as a CAR into dag/import, rather than with one
+     * request per block. The CIDs are computed locally with sha2-256, so the result matches {@link
+     * #put(List, Optional)} for the same format, and as with put the blocks are not pinned.
+     *
+     * @param format raw (the default), cbor, protobuf or v0 for CIDv0 dag-pb blocks
+     * @param maxRequestBytes the size above which the blocks are split over several requests
+     * @return the CID of each block, in order
+     */
+    public List<Cid> putBulk(List<byte[]> data, Optional<String> format, long maxRequestBytes)
+        throws IOException {
+      String fmt = format.orElse("raw");
+      long version = "v0".equals(fmt) ? 0 : 1;
+      Cid.Codec codec;
+      switch (fmt) {
+        case "raw":
+          codec = Cid.Codec.Raw;
+          break;
+        case "cbor":
+        case "dag-cbor":
+          codec = Cid.Codec.DagCbor;
+          break;
+        case "v0":
+        case "protobuf":
+        case "dag-pb":
+          codec = Cid.Codec.DagProtobuf;
+          break;
+        default:
+          throw new IllegalArgumentException("Unsupported block format: " + fmt);
+      }
+      List<Pair<Cid, byte[]>> blocks = new ArrayList<>(data.size());
+      for (byte[] block : data) blocks.add(new Pair<>(Sha256.cid(version, codec, block), block));
+
+      int start = 0;
+      while (start < blocks.size()) {
+        int end = start + 1;
+        long size = Car.sectionLength(blocks.get(start).left, blocks.get(start).right);
+        while (end < blocks.size()) {
+          long next = Car.sectionLength(blocks.get(end).left, blocks.get(end).right);
+          if (size + next > maxRequestBytes) break;
+          size += next;
+          end++;
+        }
+        importCar(blocks.subList(start, end));
+        start = end;
+      }
+      return blocks.stream().map(b -> b.left).collect(Collectors.toList());
+    }
+
+    private void importCar(List<Pair<Cid, byte[]>> blocks) throws IOException {
+      Multipart m =
+          new Multipart(
+              protocol
+                  + "://"
+                  + host
+                  + ":"
+                  + port
+                  + apiVersion
+                  + "dag/import?stream-channels=true&pin-roots=false",
+              "UTF-8");
+      List<Cid> roots = Collections.singletonList(blocks.get(0).left);
+      m.addFilePart(
+          "file", Paths.get(""), new NamedStreamable.InputStreamWrapper(Car.stream(roots, blocks)));
+      m.finish();
+    }
+
+    /** Whether the node has the block locally, without searching the network for it. */
+    public boolean has(Multihash hash) throws IOException {
+      try {
+        stat(hash, true);
+        return true;
+      } catch (RuntimeException e) {
+        if (isNotFound(e)) return false;
+        throw e;
+      }
+    }
+
+    /**
+     * Whether the daemon reported that a block is missing, e.g. "block was not found locally
+     * (offline): ipld: could not find ...", rather than the request failing.
+     */
+    private boolean isNotFound(RuntimeException e) {
+      String message = e.getMessage();
+      return message != null
+          && (message.contains("not found") || message.contains("could not find"));
+    }
+
+    private Map stat(Multihash hash, boolean offline) throws IOException {
+      return retrieveMap(
+          "block/stat?stream-channels=true&arg=" + hash + (offline ? "&offline=true" : ""));
+    }
   }
 
   /* 'ipfs object' is a plumbing command used to manipulate DAG objects directly. {Object} is a subset of {Block}
@@ -732,8 +1233,27 @@ public class IPFS {
 
     @Deprecated
     public MerkleNode links(Multihash hash) throws IOException {
-      Map json = retrieveMap("object/links?stream-channels=true&arg=" + hash);
-      return MerkleNode.fromJSON(json);
+      ListingCache cache = listingCache;
+      if (cache == null)
+        return MerkleNode.fromJSON(retrieveMap("object/links?stream-channels=true&arg=" + hash));
+      Object key = new Pair<>("object/links", hash);
+      Optional<ListingCache.Listing> cached = cache.lookup(key);
+      ListingCache.Listing listing;
+      if (cached.isPresent()) listing = cached.get();
+      else {
+        listing =
+            ListingCache.Listing.fromJSON(
+                retrieveMap("object/links?stream-channels=true&arg=" + hash));
+        cache.store(key, listing);
+      }
+      return new MerkleNode(
+          listing.hash,
+          Optional.empty(),
+          Optional.empty(),
+          Optional.empty(),
+          Optional.empty(),
+          listing.links(),
+          Optional.empty());
     }
 
     @Deprecated
@@ -816,11 +1336,16 @@ public class IPFS {
     }
 
     public String resolve(Multihash hash) throws IOException {
-      Map res = (Map) retrieveAndParse("name/resolve?arg=" + hash);
-      return (String) res.get("Path");
+      return resolve(hash.toString());
     }
 
     public String resolve(String name) throws IOException {
+      IpnsCache cache = ipnsCache;
+      if (cache == null) return resolveUncached(name);
+      return cache.resolve(name, this::resolveUncached);
+    }
+
+    private String resolveUncached(String name) throws IOException {
       Map res = (Map) retrieveAndParse("name/resolve?arg=" + name);
       return (String) res.get("Path");
     }
@@ -946,6 +1471,18 @@ public class IPFS {
       return retrieve("files/read?arg=" + arg + "&offset=" + offset + "&count=" + count);
     }
 
+    public long read(String path, OutputStream out) throws IOException {
+      return transfer("files/read?arg=" + URLEncoder.encode(path, "UTF-8"), out);
+    }
+
+    public long read(String path, WritableByteChannel out) throws IOException {
+      return transfer("files/read?arg=" + URLEncoder.encode(path, "UTF-8"), out);
+    }
+
+    public long read(String path, Path target) throws IOException {
+      return transfer("files/read?arg=" + URLEncoder.encode(path, "UTF-8"), target);
+    }
+
     public String rm(String path, boolean recursive, boolean force) throws IOException {
       String arg = URLEncoder.encode(path, "UTF-8");
       return retrieveString("files/rm?arg=" + arg + "&recursive=" + recursive + "&force=" + force);
@@ -1156,13 +1693,41 @@ public class IPFS {
 
   public class Dag {
     public byte[] get(Cid cid) throws IOException {
-      return retrieve("dag/get?stream-channels=true&arg=" + cid);
+      return retrieveCached(
+          new Pair<>("dag/get", cid),
+          diskKey("dag/get", cid),
+          "dag/get?stream-channels=true&arg=" + cid);
+    }
+
+    public long get(Cid cid, OutputStream out) throws IOException {
+      return transfer("dag/get?stream-channels=true&arg=" + cid, out);
+    }
+
+    public long get(Cid cid, WritableByteChannel out) throws IOException {
+      return transfer("dag/get?stream-channels=true&arg=" + cid, out);
+    }
+
+    public long get(Cid cid, Path target) throws IOException {
+      return transfer("dag/get?stream-channels=true&arg=" + cid, target);
     }
 
     public MerkleNode put(byte[] object) throws IOException {
       return put("dag-json", object, "dag-cbor");
     }
 
+    /**
+     * Store an object as dag-cbor. It is sent in its canonical CBOR encoding, which is smaller than
+     * JSON and needs no transcoding by the daemon. {@link DagJson} converts JSON to a {@link
+     * CborObject} locally.
+     */
+    public MerkleNode put(CborObject object) throws IOException {
+      return put(object, "dag-cbor");
+    }
+
+    public MerkleNode put(CborObject object, String outputFormat) throws IOException {
+      return put("dag-cbor", object.toByteArray(), outputFormat);
+    }
+
     public MerkleNode put(String inputFormat, byte[] object) throws IOException {
       return put(inputFormat, object, "dag-cbor");
     }
@@ -1173,6 +1738,13 @@ public class IPFS {
 
     public MerkleNode put(String inputFormat, byte[] object, String outputFormat)
         throws IOException {
+      return put(inputFormat, new NamedStreamable.ByteArrayWrapper(object), outputFormat);
+    }
+
+    /** Put a node whose encoded form is read from the given source rather than a byte array. */
+    public MerkleNode put(String inputFormat, NamedStreamable object, String outputFormat)
+        throws IOException {
+      if (object.isDirectory()) throw new IllegalArgumentException("Input must be a file");
       String prefix = protocol + "://" + host + ":" + port + apiVersion;
       Multipart m =
           new Multipart(
@@ -1182,13 +1754,38 @@ public class IPFS {
                   + "&store-codec="
                   + outputFormat,
               "UTF-8");
-      m.addFilePart("file", Paths.get(""), new NamedStreamable.ByteArrayWrapper(object));
+      m.addFilePart("file", Paths.get(""), object);
       String res = m.finish();
       return MerkleNode.fromJSON(JSONParser.parse(res));
     }
 
     public Map resolve(String path) throws IOException {
-      return retrieveMap("dag/resolve?&arg=" + path);
+      PathCache cache = pathCache;
+      if (cache == null) return retrieveMap("dag/resolve?&arg=" + path);
+      return cache.resolveDag(path, p -> retrieveMap("dag/resolve?&arg=" + p));
+    }
+
+    /**
+     * Download the DAG under root in a single dag/export request, handing each block to the
+     * consumer as soon as it has been read, so memory use is bounded by the largest block.
+     *
+     * @param verify whether to check each block against its CID
+     */
+    public void export(Cid root, boolean verify, Consumer<Pair<Cid, byte[]>> blocks)
+        throws IOException {
+      try (Car.Reader reader = new Car.Reader(retrieveStream("dag/export?arg=" + root), verify)) {
+        Pair<Cid, byte[]> block;
+        while ((block = reader.next()) != null) blocks.accept(block);
+      }
+    }
+
+    /**
+     * Write the DAG under root to a CAR file without parsing it.
+     *
+     * @return the number of bytes written
+     */
+    public long export(Cid root, Path target) throws IOException {
+      return transfer("dag/export?arg=" + root, target);
     }
 
     public Map stat(Cid cid) throws IOException {
@@ -1374,6 +1971,47 @@ public class IPFS {
     return new String(IPFS.get(target, connectTimeoutMillis, readTimeoutMillis));
   }
 
+  /**
+   * Serve an immutable read from the in-memory cache, then the disk cache, then the daemon, filling
+   * the tiers that missed.
+   *
+   * @param diskKey the key in the disk cache, or null to bypass it
+   */
+  private byte[] retrieveCached(Object key, byte[] diskKey, String path) throws IOException {
+    BlockCache memory = blockCache;
+    DiskBlockCache disk = diskKey == null ? null : diskBlockCache;
+    if (memory != null) {
+      Optional<byte[]> cached = memory.lookup(key);
+      if (cached.isPresent()) return cached.get();
+    }
+    if (disk != null) {
+      Optional<byte[]> cached = disk.lookup(diskKey);
+      if (cached.isPresent()) {
+        if (memory != null) memory.store(key, cached.get());
+        return cached.get();
+      }
+    }
+    byte[] res = retrieve(path);
+    if (memory != null) memory.store(key, res);
+    if (disk != null) {
+      try {
+        disk.store(diskKey, res);
+      } catch (IOException e) {
+        // the read succeeded, the block just stays uncached on disk
+      }
+    }
+    return res;
+  }
+
+  /** A disk cache key outside the namespace of bare multihashes, which start with a hash type. */
+  private static byte[] diskKey(String namespace, Cid cid) {
+    byte[] prefix = (namespace + "\0").getBytes(StandardCharsets.UTF_8);
+    byte[] id = cid.toBytes();
+    byte[] key = Arrays.copyOf(prefix, prefix.length + id.length);
+    System.arraycopy(id, 0, key, prefix.length, id.length);
+    return key;
+  }
+
   private byte[] retrieve(String path) throws IOException {
     URL target = new URL(protocol, host, port, apiVersion + path);
     return IPFS.get(target, connectTimeoutMillis, readTimeoutMillis);
@@ -1475,6 +2113,44 @@ public class IPFS {
     return res;
   }
 
+  private long transfer(String path, OutputStream out) throws IOException {
+    try (InputStream in = retrieveStream(path)) {
+      byte[] buf = new byte[TRANSFER_BUFFER_SIZE];
+      long total = 0;
+      int r;
+      while ((r = in.read(buf)) >= 0) {
+        out.write(buf, 0, r);
+        total += r;
+      }
+      return total;
+    }
+  }
+
+  private long transfer(String path, WritableByteChannel out) throws IOException {
+    try (InputStream in = retrieveStream(path)) {
+      byte[] buf = new byte[TRANSFER_BUFFER_SIZE];
+      long total = 0;
+      int r;
+      while ((r = in.read(buf)) >= 0) {
+        ByteBuffer chunk = ByteBuffer.wrap(buf, 0, r);
+        while (chunk.hasRemaining()) out.write(chunk);
+        total += r;
+      }
+      return total;
+    }
+  }
+
+  private long transfer(String path, Path target) throws IOException {
+    try (FileChannel out =
+        FileChannel.open(
+            target,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING)) {
+      return transfer(path, out);
+    }
+  }
+
   private InputStream retrieveStream(String path) throws IOException {
     URL target = new URL(protocol, host, port, apiVersion + path);
     return IPFS.getStream(target, connectTimeoutMillis, readTimeoutMillis);
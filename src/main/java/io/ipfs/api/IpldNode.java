@@ -1,11 +1,12 @@
 package io.ipfs.api;
 
 import io.ipfs.api.cbor.CborObject;
+import io.ipfs.api.cbor.CborPath;
 import io.ipfs.api.cbor.Cborable;
 import io.ipfs.cid.Cid;
 import io.ipfs.multihash.Multihash;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.stream.Collectors;
@@ -29,15 +30,7 @@ public interface IpldNode extends Cborable {
    * @return calculate this objects Cid
    */
   default Cid cid() {
-    byte[] raw = rawData();
-    try {
-      MessageDigest md = MessageDigest.getInstance("SHA-256");
-      md.update(raw);
-      byte[] digest = md.digest();
-      return new Cid(1, Cid.Codec.DagCbor, Multihash.Type.sha2_256, digest);
-    } catch (NoSuchAlgorithmException e) {
-      throw new RuntimeException(e.getMessage(), e);
-    }
+    return Sha256.cid(1, Cid.Codec.DagCbor, rawData());
   }
 
   /**
@@ -59,30 +52,96 @@ public interface IpldNode extends Cborable {
     return new CborIpldNode(cbor);
   }
 
+  /**
+   * A node over encoded dag-cbor, which is only decoded as far as each call needs. The array is
+   * copied, so later changes to it do not affect the node.
+   */
+  static IpldNode fromCBOR(byte[] raw) {
+    return new CborIpldNode(raw);
+  }
+
   static IpldNode fromJSON(Object json) {
     return new JsonIpldNode(json);
   }
 
+  /**
+   * A dag-cbor node. Nodes are treated as immutable: the encoding, CID and links are each computed
+   * once, on first use, so the objects a node is built from must not be changed afterwards.
+   */
   class CborIpldNode implements IpldNode {
-    private final CborObject base;
+    /** The encoding this node was read from, or null if it was built from objects. */
+    private final byte[] raw;
+
+    private volatile CborObject base;
+    private volatile byte[] encoding;
+    private volatile Cid cid;
+    private volatile List<Link> links;
+    private volatile long size = -1;
 
     public CborIpldNode(CborObject base) {
+      this.raw = null;
       this.base = base;
     }
 
+    /** A node over a copy of encoded dag-cbor, decoded when first needed rather than up front. */
+    public CborIpldNode(byte[] raw) {
+      this(raw, 0, raw == null ? 0 : raw.length);
+    }
+
+    private CborIpldNode(byte[] raw, int offset, int length) {
+      if (raw == null) throw new IllegalArgumentException("raw cannot be null");
+      this.raw = Arrays.copyOfRange(raw, offset, offset + length);
+      this.encoding = this.raw;
+    }
+
     @Override
     public CborObject toCbor() {
-      return base;
+      CborObject res = base;
+      if (res == null) base = res = CborObject.fromByteArray(raw);
+      return res;
     }
 
+    /**
+     * Follow path into this node. A node read from an encoding is navigated in place, skipping the
+     * values off the path, and the node returned covers only the encoding of the value reached.
+     * Resolution stops at a merkle link, returning the link and the rest of the path.
+     */
     @Override
     public Pair<IpldNode, List<String>> resolve(List<String> path) {
-      throw new IllegalStateException("Unimplemented!");
+      if (raw != null) {
+        CborPath.Target target = CborPath.find(raw, path);
+        IpldNode node =
+            target.length == raw.length
+                ? this
+                : new CborIpldNode(raw, target.offset, target.length);
+        return new Pair<>(node, target.remainder);
+      }
+      CborObject current = base;
+      for (int i = 0; i < path.size(); i++) {
+        String segment = path.get(i);
+        if (segment.isEmpty()) continue;
+        if (current instanceof CborObject.CborMerkleLink)
+          return new Pair<>(new CborIpldNode(current), path.subList(i, path.size()));
+        CborObject next = null;
+        if (current instanceof CborObject.CborMap)
+          next = ((CborObject.CborMap) current).values.get(new CborObject.CborString(segment));
+        else if (current instanceof CborObject.CborList) {
+          List<CborObject> list = ((CborObject.CborList) current).value;
+          int index = CborPath.parseIndex(segment);
+          if (index < list.size()) next = list.get(index);
+        } else
+          throw new IllegalStateException(
+              "Cannot resolve " + segment + " in " + current.getClass().getSimpleName());
+        if (next == null) throw new IllegalStateException("No such path segment: " + segment);
+        current = next;
+      }
+      return new Pair<>(
+          current == base ? this : new CborIpldNode(current), Collections.emptyList());
     }
 
     @Override
     public List<String> tree(String path, int depth) {
-      return tree(base, path, depth);
+      return tree(toCbor(), path, depth);
     }
 
     private List<String> tree(CborObject base, String rawPath, int depth) {
@@ -111,74 +170,112 @@ public interface IpldNode extends Cborable {
       return Collections.emptyList();
     }
 
+    private byte[] encoding() {
+      byte[] res = encoding;
+      if (res == null) encoding = res = base.toByteArray();
+      return res;
+    }
+
+    @Override
+    public Cid cid() {
+      Cid res = cid;
+      if (res == null) cid = res = Sha256.cid(1, Cid.Codec.DagCbor, encoding());
+      return res;
+    }
+
     @Override
     public long size() {
-      return rawData().length;
+      long res = size;
+      if (res < 0) {
+        byte[] encoded = encoding;
+        size = res = encoded != null ? encoded.length : base.encodedLength();
+      }
+      return res;
     }
 
     @Override
     public byte[] rawData() {
-      return base.toByteArray();
+      return encoding().clone();
     }
 
+    /** The links in key order, as an unmodifiable list. */
     @Override
     public List<Link> getLinks() {
-      return getLinks(base);
+      List<Link> res = links;
+      if (res == null) {
+        List<Link> found = new ArrayList<>();
+        collectLinks(toCbor(), found);
+        links = res = Collections.unmodifiableList(found);
+      }
+      return res;
     }
 
-    private static List<Link> getLinks(CborObject base) {
+    private static void collectLinks(CborObject base, List<Link> res) {
       if (base instanceof CborObject.CborMerkleLink)
-        return Collections.singletonList(
-            new Link("", 0, ((CborObject.CborMerkleLink) base).target));
-      if (base instanceof CborObject.CborMap) {
-        return ((CborObject.CborMap) base)
-            .values.values().stream()
-                .flatMap(cbor -> getLinks(cbor).stream())
-                .collect(Collectors.toList());
-      }
-      if (base instanceof CborObject.CborList) {
-        return ((CborObject.CborList) base)
-            .value.stream().flatMap(cbor -> getLinks(cbor).stream()).collect(Collectors.toList());
-      }
-      return Collections.emptyList();
+        res.add(new Link("", 0, ((CborObject.CborMerkleLink) base).target));
+      else if (base instanceof CborObject.CborMap)
+        for (CborObject value : ((CborObject.CborMap) base).values.values())
+          collectLinks(value, res);
+      else if (base instanceof CborObject.CborList)
+        for (CborObject value : ((CborObject.CborList) base).value) collectLinks(value, res);
     }
   }
 
+  /**
+   * A node held as JSON values. Links and bytes are written the DAG-JSON way, and everything,
+   * including the size and raw data, is answered by the equivalent dag-cbor node, see {@link
+   * DagJson#fromJSON(Object)}.
+   */
   class JsonIpldNode implements IpldNode {
     private final Object json;
+    private volatile CborIpldNode cbor;
 
     public JsonIpldNode(Object json) {
       this.json = json;
     }
 
+    private CborIpldNode cbor() {
+      CborIpldNode res = cbor;
+      if (res == null) cbor = res = new CborIpldNode(DagJson.fromJSON(json));
+      return res;
+    }
+
     @Override
     public CborObject toCbor() {
-      throw new IllegalStateException("Unimplemented!");
+      return cbor().toCbor();
+    }
+
+    /** The CID of the equivalent dag-cbor node. */
+    @Override
+    public Cid cid() {
+      return cbor().cid();
     }
 
     @Override
     public Pair<IpldNode, List<String>> resolve(List<String> path) {
-      throw new IllegalStateException("Unimplemented!");
+      return cbor().resolve(path);
     }
 
     @Override
     public List<String> tree(String path, int depth) {
-      throw new IllegalStateException("Unimplemented!");
+      return cbor().tree(path, depth);
     }
 
+    /** The size of the dag-cbor encoding, the block the CID names. */
     @Override
     public long size() {
-      return rawData().length;
+      return cbor().size();
     }
 
+    /** The dag-cbor encoding, the block the CID names. */
     @Override
     public byte[] rawData() {
-      return JSONParser.toString(json).getBytes();
+      return cbor().rawData();
     }
 
     @Override
     public List<Link> getLinks() {
-      throw new IllegalStateException("Unimplemented!");
+      return cbor().getLinks();
     }
   }
 
@@ -0,0 +1,212 @@
+package io.ipfs.api;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * A cache of IPNS resolutions. A resolution is served from the cache while fresh. After that it is
+ * still served for a stale period, while a background refresh replaces it. Failed resolutions are
+ * cached briefly, and concurrent misses for a name share a single name/resolve request.
+ *
+ * <p>name/resolve does not report the TTL of the record it resolved, so freshness is configured
+ * here and should be set to the TTL the names are published with. Install one with {@link
+ * IPFS#ipnsCache(IpnsCache)}.
+ */
+public class IpnsCache implements Closeable {
+
+  public static final long DEFAULT_TTL_MILLIS = 60_000;
+  public static final long DEFAULT_STALE_MILLIS = 10 * 60_000;
+  public static final long DEFAULT_NEGATIVE_TTL_MILLIS = 5_000;
+
+  interface Resolver {
+    String resolve(String name) throws IOException;
+  }
+
+  private final long ttlNanos;
+  private final long staleNanos;
+  private final long negativeTtlNanos;
+  private final LongSupplier clock;
+  private final ScheduledExecutorService scheduler;
+  private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<String, CompletableFuture<Entry>> loading =
+      new ConcurrentHashMap<>();
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder staleHits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder refreshes = new LongAdder();
+  private final LongAdder failures = new LongAdder();
+
+  public IpnsCache() {
+    this(DEFAULT_TTL_MILLIS, DEFAULT_STALE_MILLIS, DEFAULT_NEGATIVE_TTL_MILLIS);
+  }
+
+  /**
+   * @param ttlMillis how long a resolution is served without checking it
+   * @param staleMillis how long after that it is still served while being refreshed
+   * @param negativeTtlMillis how long a failure is returned without retrying
+   */
+  public IpnsCache(long ttlMillis, long staleMillis, long negativeTtlMillis) {
+    this(ttlMillis, staleMillis, negativeTtlMillis, System::nanoTime);
+  }
+
+  IpnsCache(long ttlMillis, long staleMillis, long negativeTtlMillis, LongSupplier clock) {
+    if (ttlMillis < 0 || staleMillis < 0 || negativeTtlMillis < 0)
+      throw new IllegalArgumentException("Cache durations must not be negative");
+    this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+    this.staleNanos = TimeUnit.MILLISECONDS.toNanos(staleMillis);
+    this.negativeTtlNanos = TimeUnit.MILLISECONDS.toNanos(negativeTtlMillis);
+    this.clock = clock;
+    this.scheduler =
+        Executors.newSingleThreadScheduledExecutor(
+            r -> {
+              Thread t = new Thread(r, "ipns-cache-refresh");
+              t.setDaemon(true);
+              return t;
+            });
+    long purge = Math.max(1000, TimeUnit.NANOSECONDS.toMillis(ttlNanos + staleNanos));
+    scheduler.scheduleWithFixedDelay(this::purge, purge, purge, TimeUnit.MILLISECONDS);
+  }
+
+  public void invalidate(String name) {
+    entries.remove(name);
+  }
+
+  public void clear() {
+    entries.clear();
+  }
+
+  /** The number of names currently cached, including failures. */
+  public int size() {
+    return entries.size();
+  }
+
+  /** Resolutions served while fresh, including cached failures. */
+  public long hits() {
+    return hits.sum();
+  }
+
+  /** Resolutions served after their TTL while a refresh was started. */
+  public long staleHits() {
+    return staleHits.sum();
+  }
+
+  public long misses() {
+    return misses.sum();
+  }
+
+  /** Background refreshes started. */
+  public long refreshes() {
+    return refreshes.sum();
+  }
+
+  /** Resolutions, foreground or background, that failed. */
+  public long failures() {
+    return failures.sum();
+  }
+
+  @Override
+  public void close() {
+    scheduler.shutdownNow();
+  }
+
+  String resolve(String name, Resolver resolver) throws IOException {
+    long now = clock.getAsLong();
+    Entry entry = entries.get(name);
+    if (entry != null
+        && now - entry.resolvedAt < (entry.path != null ? ttlNanos : negativeTtlNanos)) {
+      hits.increment();
+      return entry.get();
+    }
+    if (entry != null && entry.path != null && now - entry.resolvedAt < ttlNanos + staleNanos) {
+      staleHits.increment();
+      refresh(name, resolver);
+      return entry.path;
+    }
+    misses.increment();
+    CompletableFuture<Entry> pending = new CompletableFuture<>();
+    CompletableFuture<Entry> existing = loading.putIfAbsent(name, pending);
+    if (existing != null) return await(existing).get();
+    return load(name, resolver, pending, null).get();
+  }
+
+  /** Start a background resolution, unless one for this name is already running. */
+  private void refresh(String name, Resolver resolver) {
+    CompletableFuture<Entry> pending = new CompletableFuture<>();
+    if (loading.putIfAbsent(name, pending) != null) return;
+    refreshes.increment();
+    Entry stale = entries.get(name);
+    try {
+      scheduler.execute(() -> load(name, resolver, pending, stale));
+    } catch (RuntimeException e) {
+      // closed: keep serving the stale value
+      loading.remove(name, pending);
+      pending.complete(stale);
+    }
+  }
+
+  /**
+   * Resolve name and publish the result. A failed refresh keeps the stale entry, which is only
+   * replaced by a cached failure once it can no longer be served.
+   */
+  private Entry load(
+      String name, Resolver resolver, CompletableFuture<Entry> pending, Entry stale) {
+    Entry res;
+    try {
+      res = new Entry(resolver.resolve(name), null, clock.getAsLong());
+    } catch (IOException | RuntimeException e) {
+      failures.increment();
+      IOException failure = e instanceof IOException ? (IOException) e : new IOException(e);
+      long now = clock.getAsLong();
+      // misses may have joined a refresh that outlived the stale window
+      res =
+          stale != null && now - stale.resolvedAt < ttlNanos + staleNanos
+              ? stale
+              : new Entry(null, failure, now);
+    }
+    if (res != stale) entries.put(name, res);
+    loading.remove(name, pending);
+    pending.complete(res);
+    return res;
+  }
+
+  private static Entry await(CompletableFuture<Entry> pending) throws IOException {
+    try {
+      return pending.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e.getMessage(), e);
+    } catch (ExecutionException e) {
+      throw new RuntimeException(e.getCause().getMessage(), e.getCause());
+    }
+  }
+
+  private void purge() {
+    long now = clock.getAsLong();
+    entries.values().removeIf(e -> now - e.resolvedAt >= ttlNanos + staleNanos + negativeTtlNanos);
+  }
+
+  private static final class Entry {
+    final String path;
+    final IOException failure;
+    final long resolvedAt;
+
+    Entry(String path, IOException failure, long resolvedAt) {
+      this.path = path;
+      this.failure = failure;
+      this.resolvedAt = resolvedAt;
+    }
+
+    String get() throws IOException {
+      if (failure != null) throw new IOException(failure.getMessage(), failure);
+      return path;
+    }
+  }
+}
@@ -0,0 +1,119 @@
+package io.ipfs.api;
+
+import io.ipfs.cid.Cid;
+import io.ipfs.multihash.Multihash;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * A cache of the link listings of ls and object/links, keyed by CID, which fixes the listing for
+ * good. Listings are kept as the parsed {@link MerkleNode}s rather than JSON maps, so hits do no
+ * parsing. The nodes hold no data or links of their own and are shared between hits, so the lists
+ * returned for cached listings are unmodifiable.
+ *
+ * <p>Install one with {@link IPFS#listingCache(ListingCache)}.
+ */
+public class ListingCache {
+
+  /** Approximate per link overhead of the node, its optionals and string headers. */
+  private static final int LINK_OVERHEAD = 160;
+
+  private final SegmentedLruCache<Object, Listing> cache;
+
+  public ListingCache(long maxBytes) {
+    this(maxBytes, 16);
+  }
+
+  /**
+   * @param maxBytes the approximate maximum memory used by cached listings
+   * @param concurrency the number of independently locked stripes
+   */
+  public ListingCache(long maxBytes, int concurrency) {
+    this.cache = new SegmentedLruCache<>(maxBytes, concurrency, Listing::weight);
+  }
+
+  public void clear() {
+    cache.clear();
+  }
+
+  /** The approximate current memory use of the cache in bytes. */
+  public long weight() {
+    return cache.weight();
+  }
+
+  public long hits() {
+    return cache.hits();
+  }
+
+  public long misses() {
+    return cache.misses();
+  }
+
+  public long evictions() {
+    return cache.evictions();
+  }
+
+  public double hitRatio() {
+    long hits = hits();
+    long total = hits + misses();
+    return total == 0 ? 0 : (double) hits / total;
+  }
+
+  Optional<Listing> lookup(Object key) {
+    return Optional.ofNullable(cache.get(key));
+  }
+
+  void store(Object key, Listing listing) {
+    cache.put(key, listing);
+  }
+
+  /** The parsed links of one listing, with the hash of the listed node if the reply had one. */
+  static final class Listing {
+    final Multihash hash;
+    private final List<MerkleNode> links;
+    private final long weight;
+
+    private Listing(String hash, List<Object> links) {
+      this.hash = hash == null ? null : Cid.decode(hash);
+      List<MerkleNode> parsed = new ArrayList<>(links.size());
+      long weight = hash == null ? 0 : hash.length() * 2L;
+      for (Object json : links) {
+        MerkleNode link = MerkleNode.fromJSON(json);
+        parsed.add(
+            new MerkleNode(
+                link.hash,
+                link.name,
+                link.size,
+                link.largeSize,
+                link.type,
+                Collections.emptyList(),
+                Optional.empty()));
+        weight +=
+            LINK_OVERHEAD
+                + link.hash.toBytes().length
+                + link.name.map(String::length).orElse(0) * 2L;
+      }
+      this.links = Collections.unmodifiableList(parsed);
+      this.weight = weight;
+    }
+
+    /** A listing of the "Links" of a JSON object, keeping its "Hash". */
+    static Listing fromJSON(Map json) {
+      List<Object> links = (List<Object>) json.get("Links");
+      return new Listing(
+          (String) json.get("Hash"), links == null ? Collections.emptyList() : links);
+    }
+
+    /** The links, as an unmodifiable list shared by every hit. */
+    List<MerkleNode> links() {
+      return links;
+    }
+
+    long weight() {
+      return weight;
+    }
+  }
+}
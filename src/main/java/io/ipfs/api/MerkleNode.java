@@ -28,8 +28,19 @@ public class MerkleNode {
       Optional<Integer> type,
       List<MerkleNode> links,
       Optional<byte[]> data) {
+    this(Cid.decode(hash), name, size, largeSize, type, links, data);
+  }
+
+  public MerkleNode(
+      Multihash hash,
+      Optional<String> name,
+      Optional<Integer> size,
+      Optional<String> largeSize,
+      Optional<Integer> type,
+      List<MerkleNode> links,
+      Optional<byte[]> data) {
     this.name = name;
-    this.hash = Cid.decode(hash);
+    this.hash = hash;
     this.size = size;
     this.largeSize = largeSize;
     this.type = type;
@@ -9,9 +9,11 @@ import java.io.UnsupportedEncodingException;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.net.URLEncoder;
+import java.nio.ByteBuffer;
 import java.nio.file.Path;
 import java.util.Optional;
 import java.util.Random;
+import java.util.function.Consumer;
 
 public class Multipart {
   private final String boundary;
@@ -19,9 +21,19 @@ public class Multipart {
   private HttpURLConnection httpConn;
   private String charset;
   private OutputStream out;
+  private final boolean keepAlive;
 
   public Multipart(String requestURL, String charset) {
+    this(requestURL, charset, false);
+  }
+
+  /**
+   * @param keepAlive whether to leave the connection open for reuse by later requests to the same
+   *     host, which also skips the Expect: 100-continue round trip. Suited to many small requests.
+   */
+  public Multipart(String requestURL, String charset, boolean keepAlive) {
     this.charset = charset;
+    this.keepAlive = keepAlive;
 
     boundary = createBoundary();
 
@@ -31,7 +43,7 @@ public class Multipart {
       httpConn.setUseCaches(false);
       httpConn.setDoOutput(true);
       httpConn.setDoInput(true);
-      httpConn.setRequestProperty("Expect", "100-continue");
+      if (!keepAlive) httpConn.setRequestProperty("Expect", "100-continue");
       httpConn.setRequestProperty("Content-Type", "multipart/form-data; boundary=" + boundary);
       httpConn.setRequestProperty("User-Agent", "Java IPFS Client");
       httpConn.setChunkedStreamingMode(4096);
@@ -114,12 +126,21 @@ public class Multipart {
     out.flush();
 
     try {
-      InputStream inputStream = uploadFile.getInputStream();
-      byte[] buffer = new byte[4096];
-      int r;
-      while ((r = inputStream.read(buffer)) != -1) out.write(buffer, 0, r);
+      if (uploadFile instanceof NamedStreamable.ByteBufferWrapper) {
+        write(((NamedStreamable.ByteBufferWrapper) uploadFile).getByteBuffer());
+      } else if (uploadFile instanceof NamedStreamable.MappedFileWrapper) {
+        NamedStreamable.MappedFileWrapper file = (NamedStreamable.MappedFileWrapper) uploadFile;
+        long step = NamedStreamable.MappedFileWrapper.MAX_MAPPING;
+        for (long pos = 0; pos < file.length(); pos += step)
+          write(file.slice(pos, Math.min(step, file.length() - pos)).map());
+      } else {
+        InputStream inputStream = uploadFile.getInputStream();
+        byte[] buffer = new byte[4096];
+        int r;
+        while ((r = inputStream.read(buffer)) != -1) out.write(buffer, 0, r);
+        inputStream.close();
+      }
       out.flush();
-      inputStream.close();
     } catch (IOException e) {
       throw new RuntimeException(e.getMessage(), e);
     }
@@ -128,6 +149,20 @@ public class Multipart {
     out.flush();
   }
 
+  /** Writes the remaining bytes of buf, straight from the backing array of heap buffers. */
+  private void write(ByteBuffer buf) throws IOException {
+    if (buf.hasArray()) {
+      out.write(buf.array(), buf.arrayOffset() + buf.position(), buf.remaining());
+      return;
+    }
+    byte[] chunk = new byte[Math.min(buf.remaining(), 64 * 1024)];
+    while (buf.hasRemaining()) {
+      int n = Math.min(chunk.length, buf.remaining());
+      buf.get(chunk, 0, n);
+      out.write(chunk, 0, n);
+    }
+  }
+
   public void addHeaderField(String name, String value) throws IOException {
     append(name + ": " + value).append(LINE_FEED);
     out.flush();
@@ -135,7 +170,17 @@ public class Multipart {
 
   public String finish() throws IOException {
     StringBuilder b = new StringBuilder();
+    finish(b::append);
+    return b.toString();
+  }
 
+  /**
+   * Completes the request and hands each line of the response to the consumer as soon as it has
+   * been read, so that large replies never need to be held in memory.
+   *
+   * @param lines receives every line of a successful response, without the line terminator
+   */
+  public void finish(Consumer<String> lines) throws IOException {
     append("--" + boundary + "--").append(LINE_FEED);
     out.flush();
     out.close();
@@ -147,11 +192,12 @@ public class Multipart {
             new BufferedReader(new InputStreamReader(httpConn.getInputStream()));
         String line;
         while ((line = reader.readLine()) != null) {
-          b.append(line);
+          lines.accept(line);
         }
         reader.close();
-        httpConn.disconnect();
+        if (!keepAlive) httpConn.disconnect();
       } else {
+        StringBuilder b = new StringBuilder();
         try {
           BufferedReader reader =
               new BufferedReader(new InputStreamReader(httpConn.getInputStream()));
@@ -170,8 +216,6 @@ public class Multipart {
                 + " and Trailer header: "
                 + httpConn.getHeaderFields().get("Trailer"));
       }
-
-      return b.toString();
     } catch (IOException e) {
       throw new RuntimeException(e.getMessage(), e);
     }
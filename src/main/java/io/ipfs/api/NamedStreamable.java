@@ -6,6 +6,12 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
@@ -42,6 +48,10 @@ public interface NamedStreamable {
       return new FileInputStream(source);
     }
 
+    public File getFile() {
+      return source;
+    }
+
     public boolean isDirectory() {
       return source.isDirectory();
     }
@@ -130,6 +140,162 @@ public interface NamedStreamable {
     }
   }
 
+  /** Content held in a ByteBuffer, which may be direct or a slice of a mapped file. */
+  class ByteBufferWrapper implements NamedStreamable {
+    private final Optional<String> name;
+    private final ByteBuffer data;
+
+    public ByteBufferWrapper(ByteBuffer data) {
+      this(Optional.empty(), data);
+    }
+
+    public ByteBufferWrapper(String name, ByteBuffer data) {
+      this(Optional.of(name), data);
+    }
+
+    /** The content is the remaining bytes of data, later changes to its position are ignored. */
+    public ByteBufferWrapper(Optional<String> name, ByteBuffer data) {
+      this.name = name;
+      this.data = data.slice();
+    }
+
+    /** A view of the content, positioned at its start. */
+    public ByteBuffer getByteBuffer() {
+      return data.duplicate();
+    }
+
+    public boolean isDirectory() {
+      return false;
+    }
+
+    public InputStream getInputStream() {
+      return new ByteBufferInputStream(data.duplicate());
+    }
+
+    @Override
+    public byte[] getContents() {
+      byte[] res = new byte[data.remaining()];
+      data.duplicate().get(res);
+      return res;
+    }
+
+    @Override
+    public List<NamedStreamable> getChildren() {
+      return Collections.emptyList();
+    }
+
+    public Optional<String> getName() {
+      return name;
+    }
+  }
+
+  /**
+   * A file, or a byte range of one, which is read through memory mappings rather than copied onto
+   * the heap. Ranges larger than {@link #MAX_MAPPING} are mapped one window at a time.
+   */
+  class MappedFileWrapper implements NamedStreamable {
+    static final long MAX_MAPPING = 1L << 30;
+
+    private final Path source;
+    private final Optional<String> name;
+    private final long offset;
+    private final long length;
+
+    public MappedFileWrapper(File source) {
+      this(source.toPath());
+    }
+
+    public MappedFileWrapper(Path source) {
+      this(source, Optional.of(source.getFileName().toString()), 0, fileLength(source));
+    }
+
+    private MappedFileWrapper(Path source, Optional<String> name, long offset, long length) {
+      this.source = source;
+      this.name = name;
+      this.offset = offset;
+      this.length = length;
+    }
+
+    private static long fileLength(Path source) {
+      if (!Files.isRegularFile(source))
+        throw new IllegalStateException("File does not exist: " + source);
+      return source.toFile().length();
+    }
+
+    public long length() {
+      return length;
+    }
+
+    /** A range of this file, without a name so that it can be uploaded as one part of many. */
+    public MappedFileWrapper slice(long offset, long length) {
+      if (offset < 0 || length < 0 || offset + length > this.length)
+        throw new IndexOutOfBoundsException(
+            "Range " + offset + "+" + length + " outside of " + this.length + " bytes");
+      return new MappedFileWrapper(source, Optional.empty(), this.offset + offset, length);
+    }
+
+    /** Map the whole range, which must be at most {@link #MAX_MAPPING} bytes. */
+    public MappedByteBuffer map() throws IOException {
+      if (length > MAX_MAPPING)
+        throw new IllegalStateException("Cannot map " + length + " bytes at once, use slices");
+      try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
+        return channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+      }
+    }
+
+    public boolean isDirectory() {
+      return false;
+    }
+
+    public InputStream getInputStream() {
+      return new InputStream() {
+        long position = 0;
+        ByteBuffer window = ByteBuffer.allocate(0);
+
+        private boolean fill() throws IOException {
+          if (window.hasRemaining()) return true;
+          if (position == length) return false;
+          long size = Math.min(MAX_MAPPING, length - position);
+          window = slice(position, size).map();
+          position += size;
+          return true;
+        }
+
+        @Override
+        public int read() throws IOException {
+          return fill() ? window.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+          if (len == 0) return 0;
+          if (!fill()) return -1;
+          int n = Math.min(len, window.remaining());
+          window.get(b, off, n);
+          return n;
+        }
+      };
+    }
+
+    @Override
+    public byte[] getContents() throws IOException {
+      if (length > Integer.MAX_VALUE - 8)
+        throw new IllegalStateException("File is too large for a byte array: " + source);
+      byte[] res = new byte[(int) length];
+      map().get(res);
+      return res;
+    }
+
+    @Override
+    public List<NamedStreamable> getChildren() {
+      return Collections.emptyList();
+    }
+
+    public Optional<String> getName() {
+      return name;
+    }
+  }
+
   class DirWrapper implements NamedStreamable {
 
     private final String name;
@@ -0,0 +1,215 @@
+package io.ipfs.api;
+
+import io.ipfs.multihash.Multihash;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * A cache of path resolutions for dag/resolve and resolve. Resolutions under /ipfs/ can never
+ * change and are kept until evicted, while those under /ipns/ expire after a configured time.
+ *
+ * <p>A dag/resolve miss reuses the longest cached prefix of the path: if /ipfs/root/a/b resolved to
+ * a CID with nothing left over, /ipfs/root/a/b/c is resolved as that CID followed by /c. Install
+ * one with {@link IPFS#pathCache(PathCache)}.
+ */
+public class PathCache {
+
+  public static final long DEFAULT_MUTABLE_TTL_MILLIS = 60_000;
+
+  /** Approximate per entry overhead of the entry, key and map node. */
+  private static final int ENTRY_OVERHEAD = 96;
+
+  interface Resolver {
+    Map resolve(String path) throws IOException;
+  }
+
+  private final SegmentedLruCache<String, Entry> cache;
+  private final long mutableTtlNanos;
+  private final LongSupplier clock;
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder prefixHits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+
+  public PathCache(long maxBytes) {
+    this(maxBytes, DEFAULT_MUTABLE_TTL_MILLIS);
+  }
+
+  /**
+   * @param maxBytes the approximate maximum memory used by cached resolutions
+   * @param mutableTtlMillis how long a resolution under /ipns/ is kept
+   */
+  public PathCache(long maxBytes, long mutableTtlMillis) {
+    this(maxBytes, mutableTtlMillis, System::nanoTime);
+  }
+
+  PathCache(long maxBytes, long mutableTtlMillis, LongSupplier clock) {
+    this.cache = new SegmentedLruCache<>(maxBytes, 16, Entry::weight);
+    this.mutableTtlNanos = TimeUnit.MILLISECONDS.toNanos(mutableTtlMillis);
+    this.clock = clock;
+  }
+
+  public void clear() {
+    cache.clear();
+  }
+
+  /** Resolutions served entirely from the cache. */
+  public long hits() {
+    return hits.sum();
+  }
+
+  /** Resolutions that resolved only the part of the path after a cached prefix. */
+  public long prefixHits() {
+    return prefixHits.sum();
+  }
+
+  /** Resolutions of a whole path. */
+  public long misses() {
+    return misses.sum();
+  }
+
+  public double hitRatio() {
+    long hits = hits();
+    long total = hits + prefixHits() + misses();
+    return total == 0 ? 0 : (double) hits / total;
+  }
+
+  /** The reply of dag/resolve for path, i.e. {"Cid": {"/": cid}, "RemPath": remainder}. */
+  Map resolveDag(String path, Resolver daemon) throws IOException {
+    String[] segments = segments(path);
+    String key = join(segments, segments.length);
+    Entry exact = lookup(key);
+    if (exact != null) {
+      hits.increment();
+      return dagReply(exact);
+    }
+    Expiry expiry = expiry(segments);
+    Map reply = null;
+    for (int n = segments.length - 1; n >= 2 && reply == null; n--) {
+      Entry prefix = lookup(join(segments, n));
+      if (prefix == null || !prefix.rest.isEmpty()) continue;
+      StringBuilder rest = new StringBuilder("/ipfs/").append(prefix.value);
+      for (int i = n; i < segments.length; i++) rest.append('/').append(segments[i]);
+      reply = daemon.resolve(rest.toString());
+      expiry = expiry.min(prefix.expiry);
+      prefixHits.increment();
+    }
+    if (reply == null) {
+      reply = daemon.resolve(key);
+      misses.increment();
+    }
+    Object cid = reply.get("Cid");
+    Object rest = reply.get("RemPath");
+    if (!(cid instanceof Map) || !(((Map) cid).get("/") instanceof String)) return reply;
+    Entry entry =
+        new Entry(key, (String) ((Map) cid).get("/"), rest == null ? "" : (String) rest, expiry);
+    cache.put(key, entry);
+    return dagReply(entry);
+  }
+
+  /** The reply of resolve for /scheme/hash, i.e. {"Path": path}. */
+  Map resolve(String scheme, Multihash hash, boolean recursive, Resolver daemon)
+      throws IOException {
+    String path = "/" + scheme + "/" + hash;
+    String key = "resolve " + recursive + " " + path;
+    Entry cached = lookup(key);
+    if (cached != null) {
+      hits.increment();
+      return Collections.singletonMap("Path", cached.value);
+    }
+    misses.increment();
+    Map reply = daemon.resolve(path);
+    if (!(reply.get("Path") instanceof String)) return reply;
+    Entry entry = new Entry(key, (String) reply.get("Path"), "", expiry(segments(path)));
+    cache.put(key, entry);
+    return Collections.singletonMap("Path", entry.value);
+  }
+
+  private Entry lookup(String key) {
+    Entry entry = cache.get(key);
+    if (entry == null) return null;
+    if (entry.expiry.expired(clock.getAsLong())) {
+      cache.invalidate(key);
+      return null;
+    }
+    return entry;
+  }
+
+  private Expiry expiry(String[] segments) {
+    return segments[0].equals("ipfs")
+        ? Expiry.NEVER
+        : new Expiry(clock.getAsLong() + mutableTtlNanos);
+  }
+
+  /** The namespace, root and remaining segments of a path, which may omit the /ipfs/ prefix. */
+  private static String[] segments(String path) {
+    String[] parts = path.split("/");
+    int start = 0;
+    while (start < parts.length && parts[start].isEmpty()) start++;
+    boolean namespaced =
+        start < parts.length && (parts[start].equals("ipfs") || parts[start].equals("ipns"));
+    List<String> res = new ArrayList<>();
+    if (!namespaced) res.add("ipfs");
+    for (int i = start; i < parts.length; i++) if (!parts[i].isEmpty()) res.add(parts[i]);
+    if (res.size() < 2) throw new IllegalArgumentException("Invalid path: " + path);
+    return res.toArray(new String[0]);
+  }
+
+  private static String join(String[] segments, int n) {
+    StringBuilder res = new StringBuilder();
+    for (int i = 0; i < n; i++) res.append('/').append(segments[i]);
+    return res.toString();
+  }
+
+  private static Map dagReply(Entry entry) {
+    Map<String, Object> res = new LinkedHashMap<>();
+    res.put("Cid", Collections.singletonMap("/", entry.value));
+    res.put("RemPath", entry.rest);
+    return res;
+  }
+
+  private static final class Entry {
+    final int keyLength;
+    final String value;
+    final String rest;
+    final Expiry expiry;
+
+    Entry(String key, String value, String rest, Expiry expiry) {
+      this.keyLength = key.length();
+      this.value = value;
+      this.rest = rest;
+      this.expiry = expiry;
+    }
+
+    long weight() {
+      return 2L * (keyLength + value.length() + rest.length()) + ENTRY_OVERHEAD;
+    }
+  }
+
+  /** When an entry expires, as a System.nanoTime value, or never for immutable paths. */
+  private static final class Expiry {
+    static final Expiry NEVER = new Expiry(0);
+
+    final long nanos;
+
+    Expiry(long nanos) {
+      this.nanos = nanos;
+    }
+
+    boolean expired(long now) {
+      return this != NEVER && now - nanos >= 0;
+    }
+
+    Expiry min(Expiry other) {
+      if (this == NEVER) return other;
+      if (other == NEVER) return this;
+      return other.nanos - nanos < 0 ? other : this;
+    }
+  }
+}
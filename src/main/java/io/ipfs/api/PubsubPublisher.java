@@ -0,0 +1,159 @@
+package io.ipfs.api;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Publishes messages to one pubsub topic asynchronously. Each message is a separate pubsub/pub
+ * request, as the API has no batch publish, but requests are sent over keep-alive connections from
+ * the JVM's HTTP connection pool and at most maxInFlight of them are outstanding at once. Once that
+ * many are in flight, {@link #publish} blocks until one completes.
+ *
+ * <p>Obtain one with {@link IPFS.Pubsub#publisher(String, int)}.
+ */
+public class PubsubPublisher implements AutoCloseable {
+
+  private final IPFS ipfs;
+  private final String topic;
+  private final Semaphore inFlight;
+
+  /** The futures of messages not yet completed, for flush. */
+  private final Set<CompletableFuture<Void>> pending = ConcurrentHashMap.newKeySet();
+
+  private final ExecutorService senders;
+  private volatile boolean closed;
+
+  private final long started = System.nanoTime();
+  private final LongAdder published = new LongAdder();
+  private final LongAdder failed = new LongAdder();
+  private final LongAdder bytes = new LongAdder();
+  private final LongAdder latencyNanos = new LongAdder();
+
+  PubsubPublisher(IPFS ipfs, String topic, int maxInFlight) {
+    if (maxInFlight < 1) throw new IllegalArgumentException("maxInFlight must be positive");
+    this.ipfs = ipfs;
+    this.topic = topic;
+    this.inFlight = new Semaphore(maxInFlight);
+    this.senders =
+        Executors.newFixedThreadPool(
+            maxInFlight,
+            r -> {
+              Thread t = new Thread(r, "pubsub-publisher");
+              t.setDaemon(true);
+              return t;
+            });
+  }
+
+  public CompletableFuture<Void> publish(String data) throws InterruptedException {
+    return publish(data.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Queue a message for publishing, blocking while maxInFlight messages are outstanding.
+   *
+   * @return a future that completes when the node has accepted the message
+   */
+  public CompletableFuture<Void> publish(byte[] data) throws InterruptedException {
+    if (closed) throw new IllegalStateException("Publisher is closed");
+    inFlight.acquire();
+    long start = System.nanoTime();
+    CompletableFuture<Void> res = new CompletableFuture<>();
+    pending.add(res);
+    try {
+      CompletableFuture.runAsync(() -> ipfs.pubsub.pub(topic, data, true), senders)
+          .whenComplete(
+              (v, err) -> {
+                latencyNanos.add(System.nanoTime() - start);
+                // before completing, as dependent stages run here and may publish again
+                inFlight.release();
+                if (err == null) {
+                  published.increment();
+                  bytes.add(data.length);
+                  res.complete(null);
+                } else {
+                  failed.increment();
+                  res.completeExceptionally(err);
+                }
+                pending.remove(res);
+              });
+      return res;
+    } catch (RuntimeException e) {
+      pending.remove(res);
+      inFlight.release();
+      throw e;
+    }
+  }
+
+  /** Wait until every message published so far has completed, and its future is done. */
+  public void flush() throws InterruptedException {
+    try {
+      CompletableFuture.allOf(pending.toArray(new CompletableFuture<?>[0])).get();
+    } catch (ExecutionException e) {
+      // failures are reported through the future of each message
+    }
+  }
+
+  public Stats stats() {
+    return new Stats(
+        published.sum(),
+        failed.sum(),
+        bytes.sum(),
+        latencyNanos.sum(),
+        System.nanoTime() - started);
+  }
+
+  /** Waits for outstanding messages and stops the sending threads. */
+  @Override
+  public void close() throws InterruptedException {
+    closed = true;
+    flush();
+    senders.shutdown();
+    senders.awaitTermination(1, TimeUnit.MINUTES);
+  }
+
+  /** A snapshot of the publisher's counters. */
+  public static final class Stats {
+    public final long published;
+    public final long failed;
+    public final long bytes;
+    private final long latencyNanos;
+    private final long elapsedNanos;
+
+    Stats(long published, long failed, long bytes, long latencyNanos, long elapsedNanos) {
+      this.published = published;
+      this.failed = failed;
+      this.bytes = bytes;
+      this.latencyNanos = latencyNanos;
+      this.elapsedNanos = elapsedNanos;
+    }
+
+    /** Mean time from publish to completion, over successful and failed messages. */
+    public double meanLatencyMillis() {
+      long completed = published + failed;
+      return completed == 0 ? 0 : latencyNanos / 1e6 / completed;
+    }
+
+    public double messagesPerSecond() {
+      return elapsedNanos == 0 ? 0 : published * 1e9 / elapsedNanos;
+    }
+
+    public double bytesPerSecond() {
+      return elapsedNanos == 0 ? 0 : bytes * 1e9 / elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+          "published=%d failed=%d bytes=%d meanLatency=%.2fms rate=%.1f msg/s",
+          published, failed, bytes, meanLatencyMillis(), messagesPerSecond());
+    }
+  }
+}
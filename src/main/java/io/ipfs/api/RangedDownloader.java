@@ -0,0 +1,126 @@
+package io.ipfs.api;
+
+import io.ipfs.multihash.Multihash;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Downloads a file as concurrent byte ranges using the offset and length arguments of cat, writing
+ * each range at its position in the target file. Ranges are spread over one or more nodes, and a
+ * failed range is resumed from its last written byte on the next node.
+ *
+ * <p>Memory use is bounded by parallelism times the buffer size, whatever the size of the file.
+ */
+public class RangedDownloader {
+
+  public static final long DEFAULT_SEGMENT_SIZE = 16 * 1024 * 1024;
+  public static final int DEFAULT_BUFFER_SIZE = 256 * 1024;
+
+  private final List<IPFS> nodes;
+  private final long segmentSize;
+  private final int parallelism;
+  private final int maxAttempts;
+  private final int bufferSize;
+
+  public RangedDownloader(IPFS ipfs, int parallelism) {
+    this(
+        Collections.singletonList(ipfs), DEFAULT_SEGMENT_SIZE, parallelism, 3, DEFAULT_BUFFER_SIZE);
+  }
+
+  /**
+   * @param nodes the nodes to fetch from, in turn
+   * @param segmentSize the number of bytes fetched by each cat request
+   * @param parallelism the maximum number of concurrent requests
+   * @param maxAttempts how many times a segment is requested before the download fails
+   * @param bufferSize the size of each request's copy buffer
+   */
+  public RangedDownloader(
+      List<IPFS> nodes, long segmentSize, int parallelism, int maxAttempts, int bufferSize) {
+    if (nodes.isEmpty()) throw new IllegalArgumentException("At least one node is required");
+    if (segmentSize <= 0) throw new IllegalArgumentException("Segment size must be positive");
+    if (parallelism < 1) throw new IllegalArgumentException("parallelism must be positive");
+    if (maxAttempts < 1) throw new IllegalArgumentException("maxAttempts must be positive");
+    if (bufferSize < 1) throw new IllegalArgumentException("Buffer size must be positive");
+    this.nodes = new ArrayList<>(nodes);
+    this.segmentSize = segmentSize;
+    this.parallelism = parallelism;
+    this.maxAttempts = maxAttempts;
+    this.bufferSize = bufferSize;
+  }
+
+  /**
+   * Download a file to target, replacing it if it exists.
+   *
+   * @return the number of bytes downloaded
+   */
+  public long download(Multihash hash, Path target) throws IOException {
+    long size = ((Number) nodes.get(0).files.stat("/ipfs/" + hash).get("Size")).longValue();
+    int segments = (int) ((size + segmentSize - 1) / segmentSize);
+    ExecutorService pool =
+        Executors.newFixedThreadPool(Math.max(1, Math.min(parallelism, segments)));
+    try (FileChannel out =
+        FileChannel.open(
+            target,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING)) {
+      List<Future<?>> pending = new ArrayList<>();
+      for (int i = 0; i < segments; i++) {
+        int index = i;
+        long start = i * segmentSize;
+        long length = Math.min(segmentSize, size - start);
+        pending.add(
+            pool.submit(
+                () -> {
+                  fetch(hash, index, start, length, out);
+                  return null;
+                }));
+      }
+      for (Future<?> f : pending) f.get();
+      return size;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e.getMessage(), e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+      if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+      throw new RuntimeException(e.getCause().getMessage(), e.getCause());
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  private void fetch(Multihash hash, int index, long start, long length, FileChannel out)
+      throws IOException {
+    byte[] buf = new byte[(int) Math.min(bufferSize, length)];
+    long done = 0;
+    for (int attempt = 0; ; attempt++) {
+      IPFS node = nodes.get((index + attempt) % nodes.size());
+      try (InputStream in = node.catStream(hash, start + done, length - done)) {
+        int r;
+        while (done < length
+            && (r = in.read(buf, 0, (int) Math.min(buf.length, length - done))) >= 0) {
+          ByteBuffer chunk = ByteBuffer.wrap(buf, 0, r);
+          while (chunk.hasRemaining()) out.write(chunk, start + done + chunk.position());
+          done += r;
+        }
+        if (done == length) return;
+        throw new EOFException("Segment at " + start + " ended after " + done + " bytes");
+      } catch (IOException | RuntimeException e) {
+        if (attempt + 1 >= maxAttempts) throw e;
+      }
+    }
+  }
+}
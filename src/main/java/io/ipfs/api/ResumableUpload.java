@@ -0,0 +1,142 @@
+package io.ipfs.api;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+
+/**
+ * Uploads a large local file to an MFS path in segments with files/write, recording the number of
+ * acknowledged bytes in a checkpoint file after each segment. If the upload is interrupted, calling
+ * {@link #upload()} again with the same checkpoint continues from the last offset that the node
+ * confirms it has, rather than from the start.
+ *
+ * <p>Segments are written sequentially, as files/write rejects offsets past the current end of the
+ * file.
+ */
+public class ResumableUpload {
+
+  public static final long DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+  private final IPFS ipfs;
+  private final Path source;
+  private final String target;
+  private final Path checkpoint;
+  private final long segmentSize;
+  private final int maxAttempts;
+
+  public ResumableUpload(IPFS ipfs, Path source, String target, Path checkpoint) {
+    this(ipfs, source, target, checkpoint, DEFAULT_SEGMENT_SIZE, 3);
+  }
+
+  /**
+   * @param source the local file to upload
+   * @param target the MFS path to write to, parent directories are created as needed
+   * @param checkpoint the file recording progress, which is deleted once the upload completes
+   * @param segmentSize the number of bytes sent in each files/write request
+   * @param maxAttempts how many times a failing segment is sent before giving up
+   */
+  public ResumableUpload(
+      IPFS ipfs, Path source, String target, Path checkpoint, long segmentSize, int maxAttempts) {
+    if (segmentSize <= 0) throw new IllegalArgumentException("Segment size must be positive");
+    if (maxAttempts < 1) throw new IllegalArgumentException("maxAttempts must be positive");
+    this.ipfs = ipfs;
+    this.source = source;
+    this.target = target;
+    this.checkpoint = checkpoint;
+    this.segmentSize = segmentSize;
+    this.maxAttempts = maxAttempts;
+  }
+
+  /**
+   * Upload the remainder of the file.
+   *
+   * @return the files/stat of the completed target
+   */
+  public Map upload() throws IOException {
+    NamedStreamable.MappedFileWrapper file = new NamedStreamable.MappedFileWrapper(source);
+    long size = file.length();
+    long modified = Files.getLastModifiedTime(source).toMillis();
+    long offset = verifiedOffset(readCheckpoint(size, modified));
+    do {
+      long length = Math.min(segmentSize, size - offset);
+      writeSegment(file.slice(offset, length), offset, length);
+      offset += length;
+      long written = targetSize().orElse(-1L);
+      if (written != offset)
+        throw new IllegalStateException(
+            "Expected " + target + " to have " + offset + " bytes but it has " + written);
+      writeCheckpoint(size, modified, offset);
+    } while (offset < size);
+    Map stat = ipfs.files.stat(target);
+    Files.deleteIfExists(checkpoint);
+    return stat;
+  }
+
+  private void writeSegment(NamedStreamable segment, long offset, long length) throws IOException {
+    WriteFilesArgs.Builder args =
+        WriteFilesArgs.Builder.newInstance()
+            .setCreate()
+            .setParents()
+            .setOffset(offset)
+            .setCount(length);
+    if (offset == 0) args.setTruncate();
+    for (int attempt = 1; ; attempt++) {
+      try {
+        ipfs.files.write(target, segment, args.build());
+        return;
+      } catch (RuntimeException e) {
+        if (attempt >= maxAttempts) throw e;
+      }
+    }
+  }
+
+  /** The offset to continue from: the checkpoint, unless the node has fewer bytes than that. */
+  private long verifiedOffset(long checkpointed) throws IOException {
+    if (checkpointed == 0) return 0;
+    return Math.min(checkpointed, targetSize().orElse(0L));
+  }
+
+  private Optional<Long> targetSize() throws IOException {
+    try {
+      return Optional.of(((Number) ipfs.files.stat(target).get("Size")).longValue());
+    } catch (RuntimeException e) {
+      return Optional.empty();
+    }
+  }
+
+  /** The checkpointed offset, or 0 if there is no checkpoint for this source and target. */
+  private long readCheckpoint(long size, long modified) throws IOException {
+    if (!Files.exists(checkpoint)) return 0;
+    Properties props = new Properties();
+    try (Reader in = Files.newBufferedReader(checkpoint, StandardCharsets.UTF_8)) {
+      props.load(in);
+    }
+    if (!source.toAbsolutePath().toString().equals(props.getProperty("source"))
+        || !target.equals(props.getProperty("target"))
+        || !Long.toString(size).equals(props.getProperty("size"))
+        || !Long.toString(modified).equals(props.getProperty("modified"))) return 0;
+    return Long.parseLong(props.getProperty("offset", "0"));
+  }
+
+  private void writeCheckpoint(long size, long modified, long offset) throws IOException {
+    Properties props = new Properties();
+    props.setProperty("source", source.toAbsolutePath().toString());
+    props.setProperty("target", target);
+    props.setProperty("size", Long.toString(size));
+    props.setProperty("modified", Long.toString(modified));
+    props.setProperty("offset", Long.toString(offset));
+    Path tmp = checkpoint.resolveSibling(checkpoint.getFileName() + ".tmp");
+    try (OutputStream out = Files.newOutputStream(tmp)) {
+      props.store(out, null);
+    }
+    Files.move(
+        tmp, checkpoint, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+}
@@ -0,0 +1,178 @@
+package io.ipfs.api;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
+
+/**
+ * A weight bounded segmented LRU cache. New entries go to a probationary segment and are promoted
+ * to a protected segment, which holds most of the capacity, when they are read again. Entries read
+ * only once are therefore evicted before frequently read ones, so a scan does not flush the cache.
+ *
+ * <p>Keys are spread over independently locked stripes, each with an equal share of the capacity.
+ */
+class SegmentedLruCache<K, V> {
+
+  private static final double PROTECTED_SHARE = 0.8;
+
+  private final Stripe<K, V>[] stripes;
+  private final ToLongFunction<V> weigher;
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+
+  @SuppressWarnings("unchecked")
+  SegmentedLruCache(long maxWeight, int concurrency, ToLongFunction<V> weigher) {
+    if (maxWeight <= 0) throw new IllegalArgumentException("Maximum weight must be positive");
+    int n = 1;
+    while (n < concurrency) n <<= 1;
+    this.stripes = new Stripe[n];
+    for (int i = 0; i < n; i++) stripes[i] = new Stripe<>(Math.max(1, maxWeight / n));
+    this.weigher = weigher;
+  }
+
+  V get(K key) {
+    Stripe<K, V> stripe = stripe(key);
+    V value;
+    synchronized (stripe) {
+      value = stripe.get(key);
+    }
+    if (value == null) misses.increment();
+    else hits.increment();
+    return value;
+  }
+
+  /** Store a value, unless it is heavier than a stripe's capacity. */
+  void put(K key, V value) {
+    long weight = weigher.applyAsLong(value);
+    Stripe<K, V> stripe = stripe(key);
+    int evicted;
+    synchronized (stripe) {
+      evicted = stripe.put(key, value, weight);
+    }
+    evictions.add(evicted);
+  }
+
+  void invalidate(K key) {
+    Stripe<K, V> stripe = stripe(key);
+    synchronized (stripe) {
+      stripe.remove(key);
+    }
+  }
+
+  void clear() {
+    for (Stripe<K, V> stripe : stripes) {
+      synchronized (stripe) {
+        stripe.probation.clear();
+        stripe.protectedSegment.clear();
+        stripe.probationWeight = 0;
+        stripe.protectedWeight = 0;
+      }
+    }
+  }
+
+  long weight() {
+    long total = 0;
+    for (Stripe<K, V> stripe : stripes) {
+      synchronized (stripe) {
+        total += stripe.probationWeight + stripe.protectedWeight;
+      }
+    }
+    return total;
+  }
+
+  long hits() {
+    return hits.sum();
+  }
+
+  long misses() {
+    return misses.sum();
+  }
+
+  long evictions() {
+    return evictions.sum();
+  }
+
+  private Stripe<K, V> stripe(K key) {
+    int h = key.hashCode();
+    h ^= h >>> 16;
+    return stripes[h & (stripes.length - 1)];
+  }
+
+  private static final class Entry<V> {
+    final V value;
+    final long weight;
+
+    Entry(V value, long weight) {
+      this.value = value;
+      this.weight = weight;
+    }
+  }
+
+  private static final class Stripe<K, V> {
+    final long capacity;
+    final long protectedCapacity;
+    // both in least recently used first order
+    final LinkedHashMap<K, Entry<V>> probation = new LinkedHashMap<>();
+    final LinkedHashMap<K, Entry<V>> protectedSegment = new LinkedHashMap<>();
+    long probationWeight;
+    long protectedWeight;
+
+    Stripe(long capacity) {
+      this.capacity = capacity;
+      this.protectedCapacity = (long) (capacity * PROTECTED_SHARE);
+    }
+
+    V get(K key) {
+      Entry<V> entry = protectedSegment.remove(key);
+      if (entry != null) {
+        protectedSegment.put(key, entry);
+        return entry.value;
+      }
+      entry = probation.remove(key);
+      if (entry == null) return null;
+      probationWeight -= entry.weight;
+      protectedSegment.put(key, entry);
+      protectedWeight += entry.weight;
+      // demote the least recently used protected entries back to probation
+      Iterator<Map.Entry<K, Entry<V>>> it = protectedSegment.entrySet().iterator();
+      while (protectedWeight > protectedCapacity && protectedSegment.size() > 1) {
+        Map.Entry<K, Entry<V>> lru = it.next();
+        it.remove();
+        protectedWeight -= lru.getValue().weight;
+        probation.put(lru.getKey(), lru.getValue());
+        probationWeight += lru.getValue().weight;
+      }
+      return entry.value;
+    }
+
+    int put(K key, V value, long weight) {
+      remove(key);
+      if (weight > capacity) return 0;
+      probation.put(key, new Entry<>(value, weight));
+      probationWeight += weight;
+      int evicted = 0;
+      while (probationWeight + protectedWeight > capacity) {
+        // the new entry is only evicted once nothing else is left
+        LinkedHashMap<K, Entry<V>> victims =
+            probation.size() > 1 || protectedSegment.isEmpty() ? probation : protectedSegment;
+        Iterator<Map.Entry<K, Entry<V>>> it = victims.entrySet().iterator();
+        Entry<V> victim = it.next().getValue();
+        it.remove();
+        if (victims == probation) probationWeight -= victim.weight;
+        else protectedWeight -= victim.weight;
+        evicted++;
+      }
+      return evicted;
+    }
+
+    void remove(K key) {
+      Entry<V> entry = probation.remove(key);
+      if (entry != null) probationWeight -= entry.weight;
+      entry = protectedSegment.remove(key);
+      if (entry != null) protectedWeight -= entry.weight;
+    }
+  }
+}
@@ -0,0 +1,34 @@
+package io.ipfs.api;
+
+import io.ipfs.cid.Cid;
+import io.ipfs.multihash.Multihash;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/** SHA-256 helpers for computing block CIDs locally. */
+final class Sha256 {
+
+  /** A digest per thread, as looking one up through the providers costs more than small hashes. */
+  private static final ThreadLocal<MessageDigest> DIGEST =
+      ThreadLocal.withInitial(
+          () -> {
+            try {
+              return MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+              throw new RuntimeException(e.getMessage(), e);
+            }
+          });
+
+  private Sha256() {}
+
+  static byte[] digest(byte[] data) {
+    // digest() resets, but an exception part way through an earlier use may not have
+    MessageDigest md = DIGEST.get();
+    md.reset();
+    return md.digest(data);
+  }
+
+  static Cid cid(long version, Cid.Codec codec, byte[] block) {
+    return new Cid(version, codec, Multihash.Type.sha2_256, digest(block));
+  }
+}
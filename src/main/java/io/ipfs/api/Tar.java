@@ -0,0 +1,401 @@
+package io.ipfs.api;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+
+/** Streaming reading and extraction of the tar archives returned by the get command. */
+class Tar {
+
+  private static final int BLOCK = 512;
+
+  /** Files up to this size are buffered and handed to a writer thread when writing in parallel. */
+  static final int MAX_BUFFERED_FILE = 1024 * 1024;
+
+  private Tar() {}
+
+  enum Type {
+    FILE,
+    DIRECTORY,
+    SYMLINK,
+    OTHER
+  }
+
+  static final class Entry {
+    final String name;
+    final Type type;
+    final long size;
+    final String linkName;
+
+    Entry(String name, Type type, long size, String linkName) {
+      this.name = name;
+      this.type = type;
+      this.size = size;
+      this.linkName = linkName;
+    }
+  }
+
+  /**
+   * Reads a ustar, PAX or GNU tar stream one entry at a time. The content of the current entry is
+   * read through {@link #content()} before moving to the next.
+   */
+  static final class Reader {
+    private final InputStream in;
+    private final byte[] header = new byte[BLOCK];
+    private long remaining;
+    private int padding;
+
+    Reader(InputStream in) {
+      this.in = in;
+    }
+
+    /** The next entry, or null at the end of the archive. */
+    Entry next() throws IOException {
+      skip(remaining + padding);
+      remaining = 0;
+      padding = 0;
+      String longName = null;
+      String longLink = null;
+      Long paxSize = null;
+      while (true) {
+        if (!readBlock()) return null;
+        if (isZero(header)) return null;
+        verifyChecksum();
+        char flag = (char) header[156];
+        long size = number(124, 12);
+        if (flag == 'x' || flag == 'L' || flag == 'K') {
+          if (size > MAX_BUFFERED_FILE)
+            throw new IOException("Tar extension header of " + size + " bytes is too large");
+          byte[] data = readFully((int) size);
+          skip(pad(size));
+          if (flag == 'L') longName = cString(data, 0, data.length);
+          else if (flag == 'K') longLink = cString(data, 0, data.length);
+          else {
+            for (String[] record : paxRecords(data)) {
+              if (record[0].equals("path")) longName = record[1];
+              else if (record[0].equals("linkpath")) longLink = record[1];
+              else if (record[0].equals("size")) paxSize = Long.parseLong(record[1]);
+            }
+          }
+          continue;
+        }
+        if (flag == 'g') {
+          skip(size + pad(size));
+          continue;
+        }
+        if (paxSize != null) size = paxSize;
+        String name = longName != null ? longName : headerName();
+        String link = longLink != null ? longLink : cString(header, 157, 100);
+        Type type;
+        if (flag == '0' || flag == 0 || flag == '7') type = Type.FILE;
+        else if (flag == '5') type = Type.DIRECTORY;
+        else if (flag == '2') type = Type.SYMLINK;
+        else type = Type.OTHER;
+        if (type == Type.FILE && name.endsWith("/")) type = Type.DIRECTORY;
+        if (type == Type.DIRECTORY || type == Type.SYMLINK) size = 0;
+        remaining = size;
+        padding = pad(size);
+        return new Entry(name, type, size, link);
+      }
+    }
+
+    /** The content of the current entry, which must not be closed. */
+    InputStream content() {
+      return new InputStream() {
+        @Override
+        public int read() throws IOException {
+          byte[] one = new byte[1];
+          return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+          if (remaining == 0) return -1;
+          int r = in.read(b, off, (int) Math.min(len, remaining));
+          if (r < 0) throw new EOFException("Truncated tar entry");
+          remaining -= r;
+          return r;
+        }
+      };
+    }
+
+    private boolean readBlock() throws IOException {
+      int read = 0;
+      while (read < BLOCK) {
+        int r = in.read(header, read, BLOCK - read);
+        if (r < 0) {
+          if (read == 0) return false;
+          throw new EOFException("Truncated tar header");
+        }
+        read += r;
+      }
+      return true;
+    }
+
+    private byte[] readFully(int length) throws IOException {
+      byte[] res = new byte[length];
+      int read = 0;
+      while (read < length) {
+        int r = in.read(res, read, length - read);
+        if (r < 0) throw new EOFException("Truncated tar entry");
+        read += r;
+      }
+      return res;
+    }
+
+    private void skip(long n) throws IOException {
+      byte[] buf = null;
+      while (n > 0) {
+        long skipped = in.skip(n);
+        if (skipped <= 0) {
+          if (buf == null) buf = new byte[BLOCK];
+          int r = in.read(buf, 0, (int) Math.min(buf.length, n));
+          if (r < 0) throw new EOFException("Truncated tar entry");
+          skipped = r;
+        }
+        n -= skipped;
+      }
+    }
+
+    private void verifyChecksum() throws IOException {
+      long sum = 0;
+      for (int i = 0; i < BLOCK; i++) sum += i >= 148 && i < 156 ? ' ' : header[i] & 0xFF;
+      if (sum != number(148, 8)) throw new IOException("Invalid tar header checksum");
+    }
+
+    private String headerName() {
+      String name = cString(header, 0, 100);
+      boolean ustar = header[257] == 'u' && header[258] == 's' && header[259] == 't';
+      String prefix = ustar ? cString(header, 345, 155) : "";
+      return prefix.isEmpty() ? name : prefix + "/" + name;
+    }
+
+    /** An octal field, or a base-256 one when the high bit of its first byte is set. */
+    private long number(int offset, int length) throws IOException {
+      if ((header[offset] & 0x80) != 0) {
+        long res = header[offset] & 0x3F;
+        for (int i = 1; i < length; i++) res = (res << 8) | (header[offset + i] & 0xFF);
+        return res;
+      }
+      long res = 0;
+      for (int i = offset; i < offset + length; i++) {
+        byte b = header[i];
+        if (b == 0 || b == ' ') {
+          if (res == 0 && b == ' ') continue;
+          break;
+        }
+        if (b < '0' || b > '7') throw new IOException("Invalid tar number field");
+        res = (res << 3) + (b - '0');
+      }
+      return res;
+    }
+  }
+
+  /**
+   * Extract an archive into directory, which is created if needed. Entries that would land outside
+   * directory, through their name or a symlink, are rejected: the real path of the parent of each
+   * entry is checked before anything is created in it, and files are opened without following a
+   * symlink in their place.
+   *
+   * @param onEntry called with the path of each entry once it is written
+   * @param parallelism the number of threads writing small files, 1 to write on the calling thread
+   * @return the number of file bytes written
+   */
+  static long extract(InputStream in, Path directory, Consumer<Path> onEntry, int parallelism)
+      throws IOException {
+    if (parallelism < 1) throw new IllegalArgumentException("parallelism must be positive");
+    Path root = directory.toAbsolutePath().normalize();
+    Files.createDirectories(root);
+    Path realRoot = root.toRealPath();
+    Reader reader = new Reader(in);
+    ExecutorService pool = parallelism > 1 ? Executors.newFixedThreadPool(parallelism) : null;
+    Semaphore buffers = new Semaphore(parallelism);
+    List<Future<?>> writes = new ArrayList<>();
+    byte[] buf = new byte[64 * 1024];
+    long total = 0;
+    try {
+      Entry entry;
+      while ((entry = reader.next()) != null) {
+        Path target = resolve(root, entry.name, entry.type == Type.DIRECTORY);
+        switch (entry.type) {
+          case DIRECTORY:
+            if (!target.equals(root)) {
+              Path dir = realParent(realRoot, target).resolve(target.getFileName());
+              if (!Files.isDirectory(dir)) Files.createDirectory(dir);
+              checkInside(realRoot, dir.toRealPath(), entry.name);
+            }
+            onEntry.accept(target);
+            break;
+          case SYMLINK:
+            {
+              // a link may replace a path a pending write is about to use
+              for (Future<?> write : writes) write.get();
+              writes.clear();
+              Path parent = realParent(realRoot, target);
+              Path link = parent.resolve(target.getFileName());
+              Path dest = parent.resolve(entry.linkName).normalize();
+              if (entry.linkName.startsWith("/") || !dest.startsWith(realRoot))
+                throw new IllegalStateException("Symlink points outside the target: " + entry.name);
+              if (Files.exists(dest)) checkInside(realRoot, dest.toRealPath(), entry.name);
+              Files.deleteIfExists(link);
+              Path relative = parent.relativize(dest);
+              if (relative.toString().isEmpty()) relative = relative.resolve(".");
+              Files.createSymbolicLink(link, relative);
+              onEntry.accept(target);
+              break;
+            }
+          case FILE:
+            Path file = realParent(realRoot, target).resolve(target.getFileName());
+            if (Files.isSymbolicLink(file)) Files.delete(file);
+            total += entry.size;
+            if (pool != null && entry.size <= MAX_BUFFERED_FILE) {
+              buffers.acquire();
+              byte[] data = new byte[(int) entry.size];
+              try {
+                int read = 0;
+                InputStream content = reader.content();
+                while (read < data.length) {
+                  int r = content.read(data, read, data.length - read);
+                  if (r < 0) throw new EOFException("Truncated tar entry");
+                  read += r;
+                }
+              } catch (IOException | RuntimeException e) {
+                buffers.release();
+                throw e;
+              }
+              writes.add(
+                  pool.submit(
+                      () -> {
+                        try {
+                          write(file, ByteBuffer.wrap(data));
+                          onEntry.accept(target);
+                        } finally {
+                          buffers.release();
+                        }
+                        return null;
+                      }));
+            } else {
+              try (FileChannel out = open(file)) {
+                InputStream content = reader.content();
+                int r;
+                while ((r = content.read(buf)) >= 0) {
+                  ByteBuffer chunk = ByteBuffer.wrap(buf, 0, r);
+                  while (chunk.hasRemaining()) out.write(chunk);
+                }
+              }
+              onEntry.accept(target);
+            }
+            break;
+          default:
+            // devices, fifos and hard links have no counterpart in unixfs
+        }
+        writes.removeIf(Future::isDone);
+      }
+      for (Future<?> write : writes) write.get();
+      return total;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e.getMessage(), e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+      if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+      throw new RuntimeException(e.getCause().getMessage(), e.getCause());
+    } finally {
+      if (pool != null) pool.shutdownNow();
+    }
+  }
+
+  private static Path resolve(Path root, String name, boolean allowRoot) {
+    Path target = root.resolve(name).normalize();
+    if (name.startsWith("/") || !target.startsWith(root) || (!allowRoot && target.equals(root)))
+      throw new IllegalStateException("Tar entry outside the target: " + name);
+    return target;
+  }
+
+  /**
+   * The real path of the parent of target, created if needed. The nearest existing ancestor is
+   * checked first, so no directory is created through a symlink leading out of the target.
+   */
+  private static Path realParent(Path realRoot, Path target) throws IOException {
+    Path parent = target.getParent();
+    Path existing = parent;
+    while (!Files.exists(existing)) existing = existing.getParent();
+    checkInside(realRoot, existing.toRealPath(), target.toString());
+    Files.createDirectories(parent);
+    Path res = parent.toRealPath();
+    checkInside(realRoot, res, target.toString());
+    return res;
+  }
+
+  private static void checkInside(Path realRoot, Path real, String name) {
+    if (!real.startsWith(realRoot))
+      throw new IllegalStateException("Tar entry outside the target: " + name);
+  }
+
+  private static FileChannel open(Path target) throws IOException {
+    return FileChannel.open(
+        target,
+        StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE,
+        StandardOpenOption.TRUNCATE_EXISTING,
+        LinkOption.NOFOLLOW_LINKS);
+  }
+
+  private static void write(Path target, ByteBuffer data) throws IOException {
+    try (FileChannel out = open(target)) {
+      while (data.hasRemaining()) out.write(data);
+    }
+  }
+
+  private static int pad(long size) {
+    return (int) ((BLOCK - size % BLOCK) % BLOCK);
+  }
+
+  private static boolean isZero(byte[] block) {
+    for (byte b : block) if (b != 0) return false;
+    return true;
+  }
+
+  private static String cString(byte[] data, int offset, int length) {
+    int end = offset;
+    while (end < offset + length && data[end] != 0) end++;
+    return new String(data, offset, end - offset, StandardCharsets.UTF_8);
+  }
+
+  /** The key and value of each "length key=value\n" record of a PAX header. */
+  private static List<String[]> paxRecords(byte[] data) throws IOException {
+    List<String[]> res = new ArrayList<>();
+    int pos = 0;
+    while (pos < data.length && data[pos] != 0) {
+      int space = pos;
+      while (space < data.length && data[space] != ' ') space++;
+      int length;
+      try {
+        length = Integer.parseInt(new String(data, pos, space - pos, StandardCharsets.US_ASCII));
+      } catch (NumberFormatException e) {
+        throw new IOException("Invalid PAX record", e);
+      }
+      if (length <= 0 || pos + length > data.length) throw new IOException("Invalid PAX record");
+      String record = new String(data, space + 1, pos + length - space - 2, StandardCharsets.UTF_8);
+      int eq = record.indexOf('=');
+      if (eq > 0) res.add(new String[] {record.substring(0, eq), record.substring(eq + 1)});
+      pos += length;
+    }
+    return res;
+  }
+}
@@ -0,0 +1,269 @@
+package io.ipfs.api;
+
+import io.ipfs.cid.Cid;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Builds UnixFS DAGs in process, using the same chunking, balanced layout and dag-pb encoding as
+ * the daemon's add command, so the resulting CIDs match those of {@link IPFS#add}.
+ *
+ * <p>Files are read one chunk at a time and only the pending links of each tree level are kept in
+ * memory. Directories which the daemon would store as a HAMT shard are not supported.
+ */
+public class UnixFSImporter {
+
+  public static final int DEFAULT_CHUNK_SIZE = 256 * 1024;
+  public static final int LINKS_PER_BLOCK = 174;
+  private static final int HAMT_SHARDING_SIZE = 256 * 1024;
+
+  private static final int TYPE_DIRECTORY = 1;
+  private static final int TYPE_FILE = 2;
+
+  /** Receives every block of the DAG, children before their parents. */
+  public interface BlockSink {
+    void put(Cid cid, byte[] block) throws IOException;
+  }
+
+  public final int cidVersion;
+  public final boolean rawLeaves;
+  public final int chunkSize;
+
+  public UnixFSImporter(int cidVersion, boolean rawLeaves, int chunkSize) {
+    if (cidVersion != 0 && cidVersion != 1)
+      throw new IllegalArgumentException("Unsupported cid version: " + cidVersion);
+    if (chunkSize <= 0) throw new IllegalArgumentException("Chunk size must be positive");
+    this.cidVersion = cidVersion;
+    this.rawLeaves = rawLeaves;
+    this.chunkSize = chunkSize;
+  }
+
+  /** The daemon's defaults: CIDv0, dag-pb leaves and 256KiB chunks. */
+  public static UnixFSImporter defaults() {
+    return new UnixFSImporter(0, false, DEFAULT_CHUNK_SIZE);
+  }
+
+  /** The daemon's defaults for --cid-version=1, which implies raw leaves. */
+  public static UnixFSImporter cidV1() {
+    return new UnixFSImporter(1, true, DEFAULT_CHUNK_SIZE);
+  }
+
+  /** The add arguments which make the daemon produce the same DAG as this importer. */
+  public AddArgs toAddArgs() {
+    AddArgs args =
+        AddArgs.Builder.newInstance()
+            .setCidVersion(cidVersion)
+            .setChunker("size-" + chunkSize)
+            .build();
+    return args.with("raw-leaves", Boolean.toString(rawLeaves));
+  }
+
+  /**
+   * Import a file or directory tree, passing each block to the sink.
+   *
+   * @return the root of the DAG, with its cumulative size as reported by the daemon's add
+   */
+  public MerkleNode importFile(NamedStreamable file, BlockSink sink) throws IOException {
+    return importFile(file, sink, null);
+  }
+
+  /**
+   * Import a file or directory tree, reusing the CIDs recorded in the index for files that have not
+   * changed since they were last imported. Such files are neither read nor passed to the sink.
+   *
+   * @param index the index to consult and update, or null
+   * @return the root of the DAG, with its cumulative size as reported by the daemon's add
+   */
+  public MerkleNode importFile(NamedStreamable file, BlockSink sink, AddIndex index)
+      throws IOException {
+    if (index != null) index.checkParameters(this);
+    Link root = importEntry(file, sink, index);
+    return new MerkleNode(
+        root.cid.toString(),
+        file.getName(),
+        Optional.empty(),
+        Optional.of(Long.toString(root.tsize)),
+        Optional.empty(),
+        Collections.emptyList(),
+        Optional.empty());
+  }
+
+  private Link importEntry(NamedStreamable file, BlockSink sink, AddIndex index)
+      throws IOException {
+    if (file.isDirectory()) return importDirectory(file, sink, index);
+    if (index == null || !(file instanceof NamedStreamable.FileWrapper))
+      return importRegularFile(file, sink);
+    Path path = ((NamedStreamable.FileWrapper) file).getFile().toPath();
+    BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+    Link known = index.get(path, attrs);
+    if (known != null) return known;
+    Link link = importRegularFile(file, sink);
+    index.put(path, attrs, link);
+    return link;
+  }
+
+  private Link importDirectory(NamedStreamable dir, BlockSink sink, AddIndex index)
+      throws IOException {
+    List<NamedStreamable> children = dir.getChildren();
+    List<Link> links = new ArrayList<>(children.size());
+    long estimatedSize = 0;
+    for (NamedStreamable child : children) {
+      String name =
+          child
+              .getName()
+              .orElseThrow(() -> new IllegalStateException("Directory entries must have a name"));
+      Link link = importEntry(child, sink, index);
+      link = new Link(link.cid, name, link.tsize, link.fileSize);
+      estimatedSize += link.nameBytes.length + link.cid.toBytes().length;
+      if (estimatedSize > HAMT_SHARDING_SIZE)
+        throw new IllegalStateException(
+            "Directory " + dir.getName().orElse("") + " is too large, it would be HAMT sharded");
+      links.add(link);
+    }
+    links.sort(BY_NAME);
+    return node(links, unixfs(TYPE_DIRECTORY, null, -1, null), cidVersion, -1, sink);
+  }
+
+  private Link importRegularFile(NamedStreamable file, BlockSink sink) throws IOException {
+    List<List<Link>> levels = new ArrayList<>();
+    levels.add(new ArrayList<>());
+    try (InputStream in = file.getInputStream()) {
+      byte[] chunk = new byte[chunkSize];
+      boolean first = true;
+      int read;
+      while ((read = readFully(in, chunk)) > 0 || first) {
+        first = false;
+        addLink(levels, 0, leaf(Arrays.copyOf(chunk, read), sink), sink);
+        if (read < chunkSize) break;
+      }
+    }
+    // wrap every partially filled level up to the root
+    for (int level = 0; ; level++) {
+      List<Link> pending = levels.get(level);
+      boolean higher = false;
+      for (int i = level + 1; i < levels.size(); i++) higher |= !levels.get(i).isEmpty();
+      if (!higher && pending.size() == 1) return pending.get(0);
+      if (!pending.isEmpty()) {
+        Link parent = parent(pending, sink);
+        pending.clear();
+        addLink(levels, level + 1, parent, sink);
+      }
+    }
+  }
+
+  private void addLink(List<List<Link>> levels, int level, Link link, BlockSink sink)
+      throws IOException {
+    if (levels.size() == level) levels.add(new ArrayList<>());
+    List<Link> pending = levels.get(level);
+    pending.add(link);
+    if (pending.size() == LINKS_PER_BLOCK) {
+      Link parent = parent(pending, sink);
+      pending.clear();
+      addLink(levels, level + 1, parent, sink);
+    }
+  }
+
+  private Link leaf(byte[] data, BlockSink sink) throws IOException {
+    if (rawLeaves) {
+      Cid cid = Sha256.cid(1, Cid.Codec.Raw, data);
+      sink.put(cid, data);
+      return new Link(cid, "", data.length, data.length);
+    }
+    return node(
+        Collections.emptyList(),
+        unixfs(TYPE_FILE, data, data.length, null),
+        cidVersion,
+        data.length,
+        sink);
+  }
+
+  private Link parent(List<Link> children, BlockSink sink) throws IOException {
+    long fileSize = 0;
+    long[] blockSizes = new long[children.size()];
+    for (int i = 0; i < blockSizes.length; i++) {
+      blockSizes[i] = children.get(i).fileSize;
+      fileSize += blockSizes[i];
+    }
+    return node(
+        children, unixfs(TYPE_FILE, null, fileSize, blockSizes), cidVersion, fileSize, sink);
+  }
+
+  private static Link node(
+      List<Link> links, byte[] data, int cidVersion, long fileSize, BlockSink sink)
+      throws IOException {
+    ByteArrayOutputStream block = new ByteArrayOutputStream();
+    long tsize = 0;
+    for (Link link : links) {
+      ByteArrayOutputStream pbLink = new ByteArrayOutputStream();
+      bytesField(pbLink, 1, link.cid.toBytes());
+      bytesField(pbLink, 2, link.nameBytes);
+      varintField(pbLink, 3, link.tsize);
+      bytesField(block, 2, pbLink.toByteArray());
+      tsize += link.tsize;
+    }
+    bytesField(block, 1, data);
+    byte[] raw = block.toByteArray();
+    Cid cid = Sha256.cid(cidVersion, Cid.Codec.DagProtobuf, raw);
+    sink.put(cid, raw);
+    return new Link(cid, "", tsize + raw.length, fileSize);
+  }
+
+  private static byte[] unixfs(int type, byte[] data, long fileSize, long[] blockSizes) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    varintField(out, 1, type);
+    if (data != null && data.length > 0) bytesField(out, 2, data);
+    if (fileSize >= 0) varintField(out, 3, fileSize);
+    if (blockSizes != null) for (long size : blockSizes) varintField(out, 4, size);
+    return out.toByteArray();
+  }
+
+  private static void bytesField(ByteArrayOutputStream out, int field, byte[] value) {
+    Varint.write(out, (field << 3) | 2);
+    Varint.write(out, value.length);
+    out.write(value, 0, value.length);
+  }
+
+  private static void varintField(ByteArrayOutputStream out, int field, long value) {
+    Varint.write(out, field << 3);
+    Varint.write(out, value);
+  }
+
+  private static int readFully(InputStream in, byte[] buf) throws IOException {
+    int total = 0;
+    while (total < buf.length) {
+      int r = in.read(buf, total, buf.length - total);
+      if (r < 0) break;
+      total += r;
+    }
+    return total;
+  }
+
+  /** Links are ordered by the bytes of their UTF-8 names, as the daemon does. */
+  private static final Comparator<Link> BY_NAME =
+      (a, b) -> Arrays.compareUnsigned(a.nameBytes, b.nameBytes);
+
+  static final class Link {
+    final Cid cid;
+    final byte[] nameBytes;
+    final long tsize;
+    final long fileSize;
+
+    Link(Cid cid, String name, long tsize, long fileSize) {
+      this.cid = cid;
+      this.nameBytes = name.getBytes(StandardCharsets.UTF_8);
+      this.tsize = tsize;
+      this.fileSize = fileSize;
+    }
+  }
+}
@@ -0,0 +1,55 @@
+package io.ipfs.api;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/** Unsigned LEB128 varints, as used by multiformats, protobuf and CAR framing. */
+final class Varint {
+
+  private Varint() {}
+
+  static void write(ByteArrayOutputStream out, long value) {
+    while ((value & ~0x7FL) != 0) {
+      out.write((int) ((value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+    out.write((int) value);
+  }
+
+  static int size(long value) {
+    int size = 1;
+    while ((value & ~0x7FL) != 0) {
+      size++;
+      value >>>= 7;
+    }
+    return size;
+  }
+
+  /** Read a varint, returning -1 if the stream ends before its first byte. */
+  static long read(InputStream in) throws IOException {
+    long value = 0;
+    for (int shift = 0; shift < 64; shift += 7) {
+      int b = in.read();
+      if (b < 0) {
+        if (shift == 0) return -1;
+        throw new EOFException("Truncated varint");
+      }
+      value |= (long) (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) return value;
+    }
+    throw new IOException("Varint is too long");
+  }
+
+  /** Read a varint from buf at offset, returning the value and the offset after it. */
+  static long[] read(byte[] buf, int offset) {
+    long value = 0;
+    for (int shift = 0; shift < 64 && offset < buf.length; shift += 7) {
+      int b = buf[offset++] & 0xFF;
+      value |= (long) (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) return new long[] {value, offset};
+    }
+    throw new IllegalStateException("Invalid varint");
+  }
+}
@@ -56,6 +56,11 @@ public final class WriteFilesArgs {
       return this;
     }
 
+    public Builder setOffset(long offset) {
+      args.put("offset", String.valueOf(offset));
+      return this;
+    }
+
     public Builder setCreate() {
       args.put("create", TRUE);
       return this;
@@ -76,6 +81,11 @@ public final class WriteFilesArgs {
       return this;
     }
 
+    public Builder setCount(long count) {
+      args.put("count", String.valueOf(count));
+      return this;
+    }
+
     public Builder setRawLeaves() {
       args.put("raw-leaves", TRUE);
       return this;
@@ -33,13 +33,43 @@ import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.PushbackInputStream;
-
-/** Provides a decoder capable of handling CBOR encoded data from a {@link InputStream}. */
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Provides a decoder capable of handling CBOR encoded data from a byte array, a {@link ByteBuffer}
+ * or an {@link InputStream}.
+ *
+ * <p>The decoder reads from an array with a cursor. Arrays and heap buffers are decoded in place,
+ * while streams and direct buffers are copied into an internal buffer in chunks.
+ */
 public class CborDecoder {
+  private static final int CHUNK_SIZE = 8192;
+
+  /** The deepest nesting {@link #skip()} follows, well within the default thread stack. */
+  static final int MAX_SKIP_DEPTH = 512;
+
+  private static final VarHandle SHORT =
+      MethodHandles.byteArrayViewVarHandle(short[].class, ByteOrder.BIG_ENDIAN);
+  private static final VarHandle INT =
+      MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+  private static final VarHandle LONG =
+      MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+  /** The stream further bytes come from, or null when decoding an array or buffer. */
   protected final PushbackInputStream m_is;
 
+  private final ByteBuffer m_direct;
+  private byte[] m_buf;
+  private int m_pos;
+  private int m_limit;
+
   /**
-   * Creates a new {@link CborDecoder} instance.
+   * Creates a new {@link CborDecoder} instance. Only the bytes of the values decoded are read from
+   * the stream, so whatever follows them can still be read from it.
    *
    * @param is the actual input stream to read the CBOR-encoded data from, cannot be <code>null
    *     </code>.
@@ -52,6 +82,47 @@ public class CborDecoder {
         (is instanceof PushbackInputStream)
             ? (PushbackInputStream) is
             : new PushbackInputStream(is);
+    m_direct = null;
+    m_buf = new byte[CHUNK_SIZE];
+  }
+
+  /**
+   * Creates a new {@link CborDecoder} instance reading directly from an array.
+   *
+   * @param data the CBOR-encoded data, cannot be <code>null</code>.
+   */
+  public CborDecoder(byte[] data) {
+    this(data, 0, data.length);
+  }
+
+  public CborDecoder(byte[] data, int offset, int length) {
+    if (offset < 0 || length < 0 || offset + length > data.length) {
+      throw new IndexOutOfBoundsException("Invalid range " + offset + "+" + length);
+    }
+    m_is = null;
+    m_direct = null;
+    m_buf = data;
+    m_pos = offset;
+    m_limit = offset + length;
+  }
+
+  /**
+   * Creates a new {@link CborDecoder} instance reading the remaining bytes of a buffer. The
+   * position of the buffer is not changed.
+   *
+   * @param buffer the CBOR-encoded data, cannot be <code>null</code>.
+   */
+  public CborDecoder(ByteBuffer buffer) {
+    m_is = null;
+    if (buffer.hasArray()) {
+      m_direct = null;
+      m_buf = buffer.array();
+      m_pos = buffer.arrayOffset() + buffer.position();
+      m_limit = buffer.arrayOffset() + buffer.limit();
+    } else {
+      m_direct = buffer.duplicate();
+      m_buf = new byte[CHUNK_SIZE];
+    }
   }
 
   private static void fail(String msg, Object... args) throws IOException {
@@ -78,13 +149,11 @@ public class CborDecoder {
    *     stream.
    */
   public CborType peekType() throws IOException {
-    int p = m_is.read();
-    if (p < 0) {
+    if (!ensure(1)) {
       // EOF, nothing to peek at...
       return null;
     }
-    m_is.unread(p);
-    return valueOf(p);
+    return valueOf(m_buf[m_pos] & 0xFF);
   }
 
   /**
@@ -143,7 +212,7 @@ public class CborDecoder {
     if (len > Integer.MAX_VALUE) {
       fail("String length too long!");
     }
-    return readFully(new byte[(int) len]);
+    return readBytes((int) len);
   }
 
   /**
@@ -224,7 +293,7 @@ public class CborDecoder {
    *     input stream.
    */
   public long readInt() throws IOException {
-    int ib = m_is.read();
+    int ib = readUInt8();
 
     // in case of negative integers, extends the sign to all bits; otherwise zero...
     long ui = expectIntegerType(ib);
@@ -240,7 +309,7 @@ public class CborDecoder {
    *     output stream.
    */
   public int readInt16() throws IOException {
-    int ib = m_is.read();
+    int ib = readUInt8();
 
     // in case of negative integers, extends the sign to all bits; otherwise zero...
     long ui = expectIntegerType(ib);
@@ -257,7 +326,7 @@ public class CborDecoder {
    *     output stream.
    */
   public long readInt32() throws IOException {
-    int ib = m_is.read();
+    int ib = readUInt8();
 
     // in case of negative integers, extends the sign to all bits; otherwise zero...
     long ui = expectIntegerType(ib);
@@ -274,7 +343,7 @@ public class CborDecoder {
    *     output stream.
    */
   public long readInt64() throws IOException {
-    int ib = m_is.read();
+    int ib = readUInt8();
 
     // in case of negative integers, extends the sign to all bits; otherwise zero...
     long ui = expectIntegerType(ib);
@@ -290,7 +359,7 @@ public class CborDecoder {
    *     output stream.
    */
   public int readInt8() throws IOException {
-    int ib = m_is.read();
+    int ib = readUInt8();
 
     // in case of negative integers, extends the sign to all bits; otherwise zero...
     long ui = expectIntegerType(ib);
@@ -341,7 +410,7 @@ public class CborDecoder {
    *     output stream.
    */
   public int readSmallInt() throws IOException {
-    int ib = m_is.read();
+    int ib = readUInt8();
 
     // in case of negative integers, extends the sign to all bits; otherwise zero...
     long ui = expectIntegerType(ib);
@@ -376,7 +445,13 @@ public class CborDecoder {
     if (len > Integer.MAX_VALUE) {
       fail("String length too long!");
     }
-    return new String(readFully(new byte[(int) len]), "UTF-8");
+    int length = (int) len;
+    if (ensure(length)) {
+      String res = new String(m_buf, m_pos, length, StandardCharsets.UTF_8);
+      m_pos += length;
+      return res;
+    }
+    return new String(readBytes(length), StandardCharsets.UTF_8);
   }
 
   /**
@@ -402,6 +477,123 @@ public class CborDecoder {
     return null;
   }
 
+  /**
+   * Skips over the next value, including everything nested in it, using the encoded lengths rather
+   * than decoding it. Strings are stepped over without being read.
+   *
+   * @throws IOException in case of I/O problems reading the CBOR-encoded value from the underlying
+   *     input stream, or if the value is not well-formed.
+   * @throws IllegalStateException if values are nested deeper than {@value #MAX_SKIP_DEPTH}
+   */
+  public void skip() throws IOException {
+    skip(0);
+  }
+
+  private void skip(int depth) throws IOException {
+    if (depth > MAX_SKIP_DEPTH) {
+      throw new IllegalStateException("CBOR nested deeper than " + MAX_SKIP_DEPTH);
+    }
+    int ib = readUInt8();
+    int majorType = ib >>> 5;
+    int info = ib & 0x1F;
+    switch (majorType) {
+      case TYPE_UNSIGNED_INTEGER:
+      case TYPE_NEGATIVE_INTEGER:
+        readUInt(info, false /* breakAllowed */);
+        return;
+      case TYPE_BYTE_STRING:
+      case TYPE_TEXT_STRING:
+        if (info == BREAK) {
+          // chunks of the same type up to a break
+          skipUntilBreak(depth);
+        } else {
+          skipBytes(readUInt(info, false /* breakAllowed */));
+        }
+        return;
+      case TYPE_ARRAY:
+      case TYPE_MAP:
+        if (info == BREAK) {
+          skipUntilBreak(depth);
+          return;
+        }
+        long n = readUInt(info, false /* breakAllowed */);
+        for (long i = 0; i < n; i++) {
+          skip(depth + 1);
+          if (majorType == TYPE_MAP) {
+            skip(depth + 1);
+          }
+        }
+        return;
+      case TYPE_TAG:
+        readUInt(info, false /* breakAllowed */);
+        skip(depth + 1);
+        return;
+      default:
+        if (info == ONE_BYTE) {
+          skipBytes(1);
+        } else if (info == HALF_PRECISION_FLOAT) {
+          skipBytes(2);
+        } else if (info == SINGLE_PRECISION_FLOAT) {
+          skipBytes(4);
+        } else if (info == DOUBLE_PRECISION_FLOAT) {
+          skipBytes(8);
+        } else if (info > DOUBLE_PRECISION_FLOAT) {
+          fail("Unexpected simple value: %d!", info);
+        }
+    }
+  }
+
+  private void skipUntilBreak(int depth) throws IOException {
+    while (true) {
+      require(1);
+      if ((m_buf[m_pos] & 0xFF) == ((TYPE_FLOAT_SIMPLE << 5) | BREAK)) {
+        m_pos++;
+        return;
+      }
+      skip(depth + 1);
+    }
+  }
+
+  /** Skips the next n bytes of input. */
+  void skipBytes(long n) throws IOException {
+    int buffered = (int) Math.min(n, m_limit - m_pos);
+    m_pos += buffered;
+    n -= buffered;
+    if (n == 0) {
+      return;
+    }
+    m_pos = 0;
+    m_limit = 0;
+    if (m_direct != null) {
+      if (m_direct.remaining() < n) {
+        throw new EOFException();
+      }
+      m_direct.position(m_direct.position() + (int) n);
+      return;
+    }
+    if (m_is == null) {
+      throw new EOFException();
+    }
+    while (n > 0) {
+      long skipped = m_is.skip(n);
+      if (skipped <= 0) {
+        skipped = m_is.read(m_buf, 0, (int) Math.min(n, m_buf.length));
+        if (skipped < 0) {
+          throw new EOFException();
+        }
+      }
+      n -= skipped;
+    }
+  }
+
+  /**
+   * The offset of the next value in the array being decoded, only meaningful for a decoder created
+   * over an array.
+   */
+  int position() {
+    return m_pos;
+  }
+
   /**
    * Reads the next major type from the underlying input stream, and verifies whether it matches the
    * given expectation.
@@ -431,7 +623,7 @@ public class CborDecoder {
    *     input stream.
    */
   protected int readMajorType(int majorType) throws IOException {
-    int ib = m_is.read();
+    int ib = readUInt8();
     if (majorType != ((ib >>> 5) & 0x07)) {
       fail("Unexpected type: %s, expected: %s!", getName(ib), getName(majorType));
     }
@@ -506,8 +698,10 @@ public class CborDecoder {
    *     output stream.
    */
   protected int readUInt16() throws IOException {
-    byte[] buf = readFully(new byte[2]);
-    return (buf[0] & 0xFF) << 8 | (buf[1] & 0xFF);
+    require(2);
+    int res = (short) SHORT.get(m_buf, m_pos) & 0xFFFF;
+    m_pos += 2;
+    return res;
   }
 
   /**
@@ -519,9 +713,10 @@ public class CborDecoder {
    *     output stream.
    */
   protected long readUInt32() throws IOException {
-    byte[] buf = readFully(new byte[4]);
-    return ((buf[0] & 0xFF) << 24 | (buf[1] & 0xFF) << 16 | (buf[2] & 0xFF) << 8 | (buf[3] & 0xFF))
-        & 0xffffffffL;
+    require(4);
+    long res = (int) INT.get(m_buf, m_pos) & 0xffffffffL;
+    m_pos += 4;
+    return res;
   }
 
   /**
@@ -533,16 +728,10 @@ public class CborDecoder {
    *     output stream.
    */
   protected long readUInt64() throws IOException {
-    byte[] buf = readFully(new byte[8]);
-    return (buf[0] & 0xFFL) << 56
-        | (buf[1] & 0xFFL) << 48
-        | (buf[2] & 0xFFL) << 40
-        | (buf[3] & 0xFFL) << 32
-        | //
-        (buf[4] & 0xFFL) << 24
-        | (buf[5] & 0xFFL) << 16
-        | (buf[6] & 0xFFL) << 8
-        | (buf[7] & 0xFFL);
+    require(8);
+    long res = (long) LONG.get(m_buf, m_pos);
+    m_pos += 8;
+    return res;
   }
 
   /**
@@ -554,7 +743,8 @@ public class CborDecoder {
    *     output stream.
    */
   protected int readUInt8() throws IOException {
-    return m_is.read() & 0xff;
+    require(1);
+    return m_buf[m_pos++] & 0xff;
   }
 
   /**
@@ -575,16 +765,72 @@ public class CborDecoder {
     return readUInt(length, false /* breakAllowed */);
   }
 
-  private byte[] readFully(byte[] buf) throws IOException {
-    int len = buf.length;
-    int n = 0, off = 0;
+  /** Reads the next len bytes into a new array, directly from the source if not buffered. */
+  private byte[] readBytes(int len) throws IOException {
+    byte[] res = new byte[len];
+    int buffered = Math.min(len, m_limit - m_pos);
+    System.arraycopy(m_buf, m_pos, res, 0, buffered);
+    m_pos += buffered;
+    int n = buffered;
     while (n < len) {
-      int count = m_is.read(buf, off + n, len - n);
+      int count = fill(res, n, len - n);
       if (count < 0) {
         throw new EOFException();
       }
       n += count;
     }
-    return buf;
+    return res;
+  }
+
+  private void require(int n) throws IOException {
+    if (!ensure(n)) {
+      throw new EOFException();
+    }
+  }
+
+  /**
+   * Makes at least n bytes available from m_pos, refilling the internal buffer if there is a
+   * source.
+   *
+   * @return false if the input ends first.
+   */
+  private boolean ensure(int n) throws IOException {
+    if (m_limit - m_pos >= n) {
+      return true;
+    }
+    if (m_is == null && m_direct == null) {
+      return false;
+    }
+    if (n > m_buf.length) {
+      return false;
+    }
+    int remaining = m_limit - m_pos;
+    System.arraycopy(m_buf, m_pos, m_buf, 0, remaining);
+    m_pos = 0;
+    m_limit = remaining;
+    while (m_limit < n) {
+      // a stream is read no further than needed, as later bytes may not belong to this decoder
+      int count = fill(m_buf, m_limit, (m_is != null ? n : m_buf.length) - m_limit);
+      if (count < 0) {
+        return false;
+      }
+      m_limit += count;
+    }
+    return true;
+  }
+
+  private int fill(byte[] dest, int offset, int len) throws IOException {
+    if (m_direct != null) {
+      if (!m_direct.hasRemaining()) {
+        return -1;
+      }
+      int count = Math.min(len, m_direct.remaining());
+      m_direct.get(dest, offset, count);
+      return count;
+    }
+    if (m_is == null) {
+      return -1;
+    }
+    return m_is.read(dest, offset, len);
   }
 }
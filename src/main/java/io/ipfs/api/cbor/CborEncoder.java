@@ -27,14 +27,18 @@ import static io.ipfs.api.cbor.CborConstants.UNDEFINED;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 
 /**
- * Provides an encoder capable of encoding data into CBOR format to a given {@link OutputStream}.
+ * Provides an encoder capable of encoding data into CBOR format to a given {@link OutputStream},
+ * byte array or {@link ByteBuffer}.
  */
 public class CborEncoder {
   private static final int NEG_INT_MASK = TYPE_NEGATIVE_INTEGER << 5;
 
   private final OutputStream m_os;
+  private final ByteBuffer m_buf;
 
   /**
    * Creates a new {@link CborEncoder} instance.
@@ -47,6 +51,64 @@ public class CborEncoder {
       throw new IllegalArgumentException("OutputStream cannot be null!");
     }
     m_os = os;
+    m_buf = null;
+  }
+
+  /**
+   * Creates a new {@link CborEncoder} instance writing from the start of an array, which should be
+   * sized with {@link CborObject#encodedLength()}.
+   *
+   * @param target the array to write the CBOR-encoded data to.
+   */
+  public CborEncoder(byte[] target) {
+    this(ByteBuffer.wrap(target));
+  }
+
+  /**
+   * Creates a new {@link CborEncoder} instance writing at the position of a buffer, which is
+   * advanced past the written data. Writing more than the remaining bytes throws a {@link
+   * java.nio.BufferOverflowException}.
+   *
+   * @param target the buffer to write the CBOR-encoded data to, cannot be <code>null</code>.
+   */
+  public CborEncoder(ByteBuffer target) {
+    if (target == null) {
+      throw new IllegalArgumentException("ByteBuffer cannot be null!");
+    }
+    m_os = null;
+    m_buf = target;
+  }
+
+  /**
+   * The number of bytes of the header of a value with the given payload, as written by {@link
+   * #writeType(int, long)}.
+   */
+  static int headerLength(long value) {
+    if (value < 0x18L) return 1;
+    if (value < 0x100L) return 2;
+    if (value < 0x10000L) return 3;
+    if (value < 0x100000000L) return 5;
+    return 9;
+  }
+
+  /** The number of bytes of the UTF-8 encoding of a string, without encoding it. */
+  static int utf8Length(String value) {
+    int len = value.length();
+    int res = len;
+    for (int i = 0; i < len; i++) {
+      char c = value.charAt(i);
+      if (c < 0x80) continue;
+      if (c < 0x800) res += 1;
+      else if (Character.isHighSurrogate(c)
+          && i + 1 < len
+          && Character.isLowSurrogate(value.charAt(i + 1))) {
+        res += 2;
+        i++;
+      } else if (Character.isSurrogate(c)) {
+        // unpaired surrogates are encoded as '?'
+      } else res += 2;
+    }
+    return res;
   }
 
   /**
@@ -364,7 +426,7 @@ public class CborEncoder {
     // complement negative value...
     value = Math.min(0x17, (sign ^ value));
 
-    m_os.write((int) (mt | value));
+    write((int) (mt | value));
   }
 
   /**
@@ -395,7 +457,36 @@ public class CborEncoder {
    *     output stream.
    */
   public void writeTextString(String value) throws IOException {
-    writeString(TYPE_TEXT_STRING, value == null ? null : value.getBytes("UTF-8"));
+    if (m_buf == null || value == null) {
+      writeString(TYPE_TEXT_STRING, value == null ? null : value.getBytes("UTF-8"));
+      return;
+    }
+    // encode straight into the buffer rather than through an intermediate array
+    writeType(TYPE_TEXT_STRING, utf8Length(value));
+    int len = value.length();
+    for (int i = 0; i < len; i++) {
+      char c = value.charAt(i);
+      if (c < 0x80) {
+        m_buf.put((byte) c);
+      } else if (c < 0x800) {
+        m_buf.put((byte) (0xC0 | (c >> 6)));
+        m_buf.put((byte) (0x80 | (c & 0x3F)));
+      } else if (Character.isHighSurrogate(c)
+          && i + 1 < len
+          && Character.isLowSurrogate(value.charAt(i + 1))) {
+        int cp = Character.toCodePoint(c, value.charAt(++i));
+        m_buf.put((byte) (0xF0 | (cp >> 18)));
+        m_buf.put((byte) (0x80 | ((cp >> 12) & 0x3F)));
+        m_buf.put((byte) (0x80 | ((cp >> 6) & 0x3F)));
+        m_buf.put((byte) (0x80 | (cp & 0x3F)));
+      } else if (Character.isSurrogate(c)) {
+        m_buf.put((byte) '?');
+      } else {
+        m_buf.put((byte) (0xE0 | (c >> 12)));
+        m_buf.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+        m_buf.put((byte) (0x80 | (c & 0x3F)));
+      }
+    }
   }
 
   /**
@@ -433,7 +524,7 @@ public class CborEncoder {
    *     output stream.
    */
   protected void writeSimpleType(int majorType, int value) throws IOException {
-    m_os.write((majorType << 5) | (value & 0x1f));
+    write((majorType << 5) | (value & 0x1f));
   }
 
   /**
@@ -448,8 +539,13 @@ public class CborEncoder {
   protected void writeString(int majorType, byte[] bytes) throws IOException {
     int len = (bytes == null) ? 0 : bytes.length;
     writeType(majorType, len);
-    for (int i = 0; i < len; i++) {
-      m_os.write(bytes[i]);
+    if (len == 0) {
+      return;
+    }
+    if (m_buf != null) {
+      m_buf.put(bytes, 0, len);
+    } else {
+      m_os.write(bytes, 0, len);
     }
   }
 
@@ -479,7 +575,7 @@ public class CborEncoder {
    */
   protected void writeUInt(int mt, long value) throws IOException {
     if (value < 0x18L) {
-      m_os.write((int) (mt | value));
+      write((int) (mt | value));
     } else if (value < 0x100L) {
       writeUInt8(mt, (int) value);
     } else if (value < 0x10000L) {
@@ -491,6 +587,13 @@ public class CborEncoder {
     }
   }
 
+  /**
+   * CBOR is big-endian whatever the order of the target buffer, which is left as the caller set it.
+   */
+  private boolean bigEndian() {
+    return m_buf.order() == ByteOrder.BIG_ENDIAN;
+  }
+
   /**
    * Encodes and writes an unsigned 16-bit integer value
    *
@@ -501,7 +604,11 @@ public class CborEncoder {
    *     output stream.
    */
   protected void writeUInt16(int mt, int value) throws IOException {
-    m_os.write(mt | TWO_BYTES);
+    write(mt | TWO_BYTES);
+    if (m_buf != null) {
+      m_buf.putShort(bigEndian() ? (short) value : Short.reverseBytes((short) value));
+      return;
+    }
     m_os.write(value >> 8);
     m_os.write(value & 0xFF);
   }
@@ -516,7 +623,11 @@ public class CborEncoder {
    *     output stream.
    */
   protected void writeUInt32(int mt, int value) throws IOException {
-    m_os.write(mt | FOUR_BYTES);
+    write(mt | FOUR_BYTES);
+    if (m_buf != null) {
+      m_buf.putInt(bigEndian() ? value : Integer.reverseBytes(value));
+      return;
+    }
     m_os.write(value >> 24);
     m_os.write(value >> 16);
     m_os.write(value >> 8);
@@ -533,7 +644,11 @@ public class CborEncoder {
    *     output stream.
    */
   protected void writeUInt64(int mt, long value) throws IOException {
-    m_os.write(mt | EIGHT_BYTES);
+    write(mt | EIGHT_BYTES);
+    if (m_buf != null) {
+      m_buf.putLong(bigEndian() ? value : Long.reverseBytes(value));
+      return;
+    }
     m_os.write((int) (value >> 56));
     m_os.write((int) (value >> 48));
     m_os.write((int) (value >> 40));
@@ -554,7 +669,15 @@ public class CborEncoder {
    *     output stream.
    */
   protected void writeUInt8(int mt, int value) throws IOException {
-    m_os.write(mt | ONE_BYTE);
-    m_os.write(value & 0xFF);
+    write(mt | ONE_BYTE);
+    write(value & 0xFF);
+  }
+
+  private void write(int b) throws IOException {
+    if (m_buf != null) {
+      m_buf.put((byte) b);
+    } else {
+      m_os.write(b);
+    }
   }
 }
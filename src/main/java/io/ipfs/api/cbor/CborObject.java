@@ -2,9 +2,10 @@ package io.ipfs.api.cbor;
 
 import io.ipfs.cid.Cid;
 import io.ipfs.multihash.Multihash;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -17,17 +18,53 @@ public interface CborObject {
 
   void serialize(CborEncoder encoder);
 
+  /**
+   * The exact number of bytes {@link #serialize(CborEncoder)} writes, computed without encoding.
+   * The types here compute it directly, other implementations are encoded to count their bytes.
+   */
+  default long encodedLength() {
+    long[] count = new long[1];
+    serialize(
+        new CborEncoder(
+            new OutputStream() {
+              @Override
+              public void write(int b) {
+                count[0]++;
+              }
+
+              @Override
+              public void write(byte[] b, int off, int len) {
+                count[0] += len;
+              }
+            }));
+    return count[0];
+  }
+
+  /** The encoding of this object, written into a single array of exactly the right size. */
   default byte[] toByteArray() {
-    ByteArrayOutputStream bout = new ByteArrayOutputStream();
-    CborEncoder encoder = new CborEncoder(bout);
-    serialize(encoder);
-    return bout.toByteArray();
+    long length = encodedLength();
+    if (length > Integer.MAX_VALUE - 8)
+      throw new IllegalStateException("CBOR object of " + length + " bytes is too large");
+    byte[] res = new byte[(int) length];
+    serialize(new CborEncoder(res));
+    return res;
+  }
+
+  /**
+   * Write the encoding of this object at the position of target, e.g. a pooled buffer, advancing
+   * its position.
+   *
+   * @throws java.nio.BufferOverflowException if fewer than {@link #encodedLength()} bytes remain
+   */
+  default void writeTo(ByteBuffer target) {
+    if (target.remaining() < encodedLength()) throw new BufferOverflowException();
+    serialize(new CborEncoder(target));
   }
 
   int LINK_TAG = 42;
 
   static CborObject fromByteArray(byte[] cbor) {
-    return deserialize(new CborDecoder(new ByteArrayInputStream(cbor)));
+    return deserialize(new CborDecoder(cbor));
   }
 
   static CborObject deserialize(CborDecoder decoder) {
@@ -55,17 +92,32 @@ public interface CborObject {
             decoder.readBoolean();
             return new CborBoolean(false);
           }
+          if (type.getAdditionalInfo() == CborConstants.HALF_PRECISION_FLOAT)
+            return new CborDouble(decoder.readHalfPrecisionFloat());
+          if (type.getAdditionalInfo() == CborConstants.SINGLE_PRECISION_FLOAT)
+            return new CborDouble(decoder.readFloat());
+          if (type.getAdditionalInfo() == CborConstants.DOUBLE_PRECISION_FLOAT)
+            return new CborDouble(decoder.readDouble());
           throw new IllegalStateException("Unimplemented simple type! " + type.getAdditionalInfo());
         case CborConstants.TYPE_MAP:
           {
             long nValues = decoder.readMapLength();
-            SortedMap<CborObject, CborObject> result = new TreeMap<>();
+            if (nValues < 0 || nValues > Integer.MAX_VALUE - 8)
+              throw new IllegalStateException("Invalid CBOR map length: " + nValues);
+            // grown as entries arrive rather than trusting the declared length
+            Object[] keys = new Object[(int) Math.min(nValues, 16)];
+            Object[] values = new Object[keys.length];
+            int n = 0;
             for (long i = 0; i < nValues; i++) {
-              CborObject key = deserialize(decoder);
-              CborObject value = deserialize(decoder);
-              result.put(key, value);
+              if (n == keys.length) {
+                keys = Arrays.copyOf(keys, (int) Math.min(nValues, 2L * n));
+                values = Arrays.copyOf(values, keys.length);
+              }
+              keys[n] = deserialize(decoder);
+              values[n] = deserialize(decoder);
+              n++;
             }
-            return new CborMap(result);
+            return new CborMap(SortedArrayMap.of(keys, values, n));
           }
         case CborConstants.TYPE_ARRAY:
           long nItems = decoder.readArrayLength();
@@ -97,6 +149,7 @@ public interface CborObject {
   }
 
   final class CborMap implements CborObject {
+    /** The entries in key order, immutable when the map was deserialized. */
     public final SortedMap<CborObject, CborObject> values;
 
     public CborMap(SortedMap<CborObject, CborObject> values) {
@@ -115,6 +168,14 @@ public interface CborObject {
       return new CborMap(transformed);
     }
 
+    @Override
+    public long encodedLength() {
+      long res = CborEncoder.headerLength(values.size());
+      for (Map.Entry<CborObject, CborObject> entry : values.entrySet())
+        res += entry.getKey().encodedLength() + entry.getValue().encodedLength();
+      return res;
+    }
+
     @Override
     public void serialize(CborEncoder encoder) {
       try {
@@ -151,6 +212,12 @@ public interface CborObject {
       this.target = target;
     }
 
+    @Override
+    public long encodedLength() {
+      int length = target.toBytes().length + 1;
+      return CborEncoder.headerLength(LINK_TAG) + CborEncoder.headerLength(length) + length;
+    }
+
     @Override
     public void serialize(CborEncoder encoder) {
       try {
@@ -187,6 +254,13 @@ public interface CborObject {
       this.value = value;
     }
 
+    @Override
+    public long encodedLength() {
+      long res = CborEncoder.headerLength(value.size());
+      for (CborObject object : value) res += object.encodedLength();
+      return res;
+    }
+
     @Override
     public void serialize(CborEncoder encoder) {
       try {
@@ -222,6 +296,11 @@ public interface CborObject {
       this.value = value;
     }
 
+    @Override
+    public long encodedLength() {
+      return 1;
+    }
+
     @Override
     public void serialize(CborEncoder encoder) {
       try {
@@ -270,6 +349,11 @@ public interface CborObject {
       return 0;
     }
 
+    @Override
+    public long encodedLength() {
+      return CborEncoder.headerLength(value.length) + (long) value.length;
+    }
+
     @Override
     public void serialize(CborEncoder encoder) {
       try {
@@ -310,6 +394,12 @@ public interface CborObject {
       return value.compareTo(cborString.value);
     }
 
+    @Override
+    public long encodedLength() {
+      int length = CborEncoder.utf8Length(value);
+      return CborEncoder.headerLength(length) + (long) length;
+    }
+
     @Override
     public void serialize(CborEncoder encoder) {
       try {
@@ -352,6 +442,11 @@ public interface CborObject {
       return Long.compare(value, other.value);
     }
 
+    @Override
+    public long encodedLength() {
+      return CborEncoder.headerLength(value < 0 ? ~value : value);
+    }
+
     @Override
     public void serialize(CborEncoder encoder) {
       try {
@@ -382,6 +477,54 @@ public interface CborObject {
     }
   }
 
+  /** A float, which dag-cbor always encodes in double precision. */
+  final class CborDouble implements CborObject, Comparable<CborDouble> {
+    public final double value;
+
+    public CborDouble(double value) {
+      this.value = value;
+    }
+
+    @Override
+    public int compareTo(CborDouble other) {
+      return Double.compare(value, other.value);
+    }
+
+    @Override
+    public long encodedLength() {
+      return 9;
+    }
+
+    @Override
+    public void serialize(CborEncoder encoder) {
+      try {
+        encoder.writeDouble(value);
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (o == null || getClass() != o.getClass()) return false;
+
+      CborDouble that = (CborDouble) o;
+
+      return Double.compare(value, that.value) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+      return Double.hashCode(value);
+    }
+
+    @Override
+    public String toString() {
+      return "CborDouble{" + value + '}';
+    }
+  }
+
   final class CborNull implements CborObject, Comparable<CborNull> {
     public CborNull() {}
 
@@ -390,6 +533,11 @@ public interface CborObject {
       return 0;
     }
 
+    @Override
+    public long encodedLength() {
+      return 1;
+    }
+
     @Override
     public void serialize(CborEncoder encoder) {
       try {
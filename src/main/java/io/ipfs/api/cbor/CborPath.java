@@ -0,0 +1,134 @@
+package io.ipfs.api.cbor;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Navigates a path through encoded dag-cbor without decoding it. Map keys are compared against the
+ * encoded bytes and every value not on the path is skipped using its encoded length, so only the
+ * headers along the way are read.
+ */
+public final class CborPath {
+
+  private CborPath() {}
+
+  /** Where a path led within an encoding. */
+  public static final class Target {
+    /** The offset and length of the encoding of the value reached. */
+    public final int offset;
+
+    public final int length;
+
+    /** The segments left after the path reached a merkle link, otherwise empty. */
+    public final List<String> remainder;
+
+    Target(int offset, int length, List<String> remainder) {
+      this.offset = offset;
+      this.length = length;
+      this.remainder = remainder;
+    }
+
+    /** A copy of the encoding of the value reached. */
+    public byte[] copyOf(byte[] cbor) {
+      return Arrays.copyOfRange(cbor, offset, offset + length);
+    }
+  }
+
+  public static Target find(byte[] cbor, List<String> path) {
+    return find(cbor, 0, cbor.length, path);
+  }
+
+  /**
+   * Follow path from the value encoded at offset. Map keys are matched by name and lists by index,
+   * and empty segments are ignored. Resolution stops at a merkle link, leaving the rest of the path
+   * in {@link Target#remainder}.
+   *
+   * @throws IllegalStateException if a segment does not exist in the value it is applied to
+   */
+  public static Target find(byte[] cbor, int offset, int length, List<String> path) {
+    try {
+      CborDecoder decoder = new CborDecoder(cbor, offset, length);
+      int i = 0;
+      while (true) {
+        while (i < path.size() && path.get(i).isEmpty()) i++;
+        int start = decoder.position();
+        if (i == path.size()) {
+          decoder.skip();
+          return new Target(start, decoder.position() - start, Collections.emptyList());
+        }
+        String segment = path.get(i);
+        CborType type = decoder.peekType();
+        if (type == null) throw new EOFException();
+        switch (type.getMajorType()) {
+          case CborConstants.TYPE_MAP:
+            enterMapValue(decoder, cbor, segment);
+            break;
+          case CborConstants.TYPE_ARRAY:
+            enterListElement(decoder, segment);
+            break;
+          case CborConstants.TYPE_TAG:
+            long tag = decoder.readTag();
+            if (tag != CborObject.LINK_TAG)
+              throw new IllegalStateException("Unknown TAG in CBOR: " + tag);
+            decoder.skip();
+            return new Target(start, decoder.position() - start, path.subList(i, path.size()));
+          default:
+            throw new IllegalStateException(
+                "Cannot resolve " + segment + " in " + CborType.getName(type.getMajorType()));
+        }
+        i++;
+      }
+    } catch (IOException e) {
+      throw new RuntimeException(e.getMessage(), e);
+    }
+  }
+
+  /** Leave the decoder at the value of key in the map it is at. */
+  private static void enterMapValue(CborDecoder decoder, byte[] cbor, String key)
+      throws IOException {
+    long n = decoder.readMapLength();
+    if (n < 0) throw new IllegalStateException("Indefinite length maps are not valid dag-cbor");
+    byte[] wanted = key.getBytes(StandardCharsets.UTF_8);
+    for (long i = 0; i < n; i++) {
+      CborType type = decoder.peekType();
+      if (type == null) throw new EOFException();
+      if (type.getMajorType() != CborConstants.TYPE_TEXT_STRING) {
+        decoder.skip();
+      } else {
+        long length = decoder.readTextStringLength();
+        if (length < 0)
+          throw new IllegalStateException("Indefinite length strings are not valid dag-cbor");
+        int at = decoder.position();
+        decoder.skipBytes(length);
+        if (length == wanted.length
+            && Arrays.equals(cbor, at, at + wanted.length, wanted, 0, wanted.length)) return;
+      }
+      decoder.skip();
+    }
+    throw new IllegalStateException("No such path segment: " + key);
+  }
+
+  /** Leave the decoder at element index of the list it is at. */
+  private static void enterListElement(CborDecoder decoder, String index) throws IOException {
+    long n = decoder.readArrayLength();
+    if (n < 0) throw new IllegalStateException("Indefinite length lists are not valid dag-cbor");
+    long target = parseIndex(index);
+    if (target >= n) throw new IllegalStateException("No such path segment: " + index);
+    for (long i = 0; i < target; i++) decoder.skip();
+  }
+
+  /** The list index a path segment names. */
+  public static int parseIndex(String segment) {
+    try {
+      int index = Integer.parseInt(segment);
+      if (index >= 0) return index;
+    } catch (NumberFormatException e) {
+      // reported below
+    }
+    throw new IllegalStateException("Invalid list index: " + segment);
+  }
+}
@@ -0,0 +1,169 @@
+package io.ipfs.api.cbor;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.SortedMap;
+
+/**
+ * An immutable sorted map held in parallel arrays of keys and values in their natural order, which
+ * for {@link CborObject.CborString} keys is the canonical dag-cbor order.
+ *
+ * <p>Small maps are searched linearly, larger ones with a binary search. Sub map views share the
+ * arrays of the map they come from.
+ */
+final class SortedArrayMap<K, V> extends AbstractMap<K, V> implements SortedMap<K, V> {
+
+  private static final int LINEAR_SEARCH_LIMIT = 8;
+
+  private final Object[] keys;
+  private final Object[] values;
+  private final int from;
+  private final int to;
+
+  private SortedArrayMap(Object[] keys, Object[] values, int from, int to) {
+    this.keys = keys;
+    this.values = values;
+    this.from = from;
+    this.to = to;
+  }
+
+  /**
+   * A map of the first n keys and values, which are used as they are when the keys are already in
+   * strictly ascending order. Otherwise they are sorted, and the last value of a repeated key wins.
+   */
+  static <K, V> SortedArrayMap<K, V> of(Object[] keys, Object[] values, int n) {
+    boolean sorted = true;
+    for (int i = 1; i < n && sorted; i++) sorted = compare(keys[i - 1], keys[i]) < 0;
+    if (sorted) return new SortedArrayMap<>(keys, values, 0, n);
+
+    Integer[] order = new Integer[n];
+    for (int i = 0; i < n; i++) order[i] = i;
+    // stable, so repeated keys stay in input order
+    Arrays.sort(order, (a, b) -> compare(keys[a], keys[b]));
+    Object[] sortedKeys = new Object[n];
+    Object[] sortedValues = new Object[n];
+    int size = 0;
+    for (int i = 0; i < n; i++) {
+      Object key = keys[order[i]];
+      if (size > 0 && compare(sortedKeys[size - 1], key) == 0) size--;
+      sortedKeys[size] = key;
+      sortedValues[size] = values[order[i]];
+      size++;
+    }
+    return new SortedArrayMap<>(sortedKeys, sortedValues, 0, size);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static int compare(Object a, Object b) {
+    return ((Comparable<Object>) a).compareTo(b);
+  }
+
+  private int indexOf(Object key) {
+    if (to - from <= LINEAR_SEARCH_LIMIT) {
+      for (int i = from; i < to; i++) if (keys[i].equals(key)) return i;
+      return -1;
+    }
+    int i = Arrays.binarySearch(keys, from, to, key);
+    return i >= 0 ? i : -1;
+  }
+
+  /** The index of the first key at or after key. */
+  private int lowerBound(Object key) {
+    int lo = from;
+    int hi = to;
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (compare(keys[mid], key) < 0) lo = mid + 1;
+      else hi = mid;
+    }
+    return lo;
+  }
+
+  @Override
+  public int size() {
+    return to - from;
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return indexOf(key) >= 0;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public V get(Object key) {
+    int i = indexOf(key);
+    return i < 0 ? null : (V) values[i];
+  }
+
+  @Override
+  public Comparator<? super K> comparator() {
+    return null;
+  }
+
+  @Override
+  public SortedMap<K, V> subMap(K fromKey, K toKey) {
+    if (compare(fromKey, toKey) > 0) throw new IllegalArgumentException("fromKey > toKey");
+    return new SortedArrayMap<>(keys, values, lowerBound(fromKey), lowerBound(toKey));
+  }
+
+  @Override
+  public SortedMap<K, V> headMap(K toKey) {
+    return new SortedArrayMap<>(keys, values, from, lowerBound(toKey));
+  }
+
+  @Override
+  public SortedMap<K, V> tailMap(K fromKey) {
+    return new SortedArrayMap<>(keys, values, lowerBound(fromKey), to);
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public K firstKey() {
+    if (from == to) throw new NoSuchElementException();
+    return (K) keys[from];
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public K lastKey() {
+    if (from == to) throw new NoSuchElementException();
+    return (K) keys[to - 1];
+  }
+
+  @Override
+  public Set<Map.Entry<K, V>> entrySet() {
+    return new AbstractSet<Map.Entry<K, V>>() {
+      @Override
+      public Iterator<Map.Entry<K, V>> iterator() {
+        return new Iterator<Map.Entry<K, V>>() {
+          int next = from;
+
+          @Override
+          public boolean hasNext() {
+            return next < to;
+          }
+
+          @Override
+          @SuppressWarnings("unchecked")
+          public Map.Entry<K, V> next() {
+            if (next >= to) throw new NoSuchElementException();
+            int i = next++;
+            return new SimpleImmutableEntry<>((K) keys[i], (V) values[i]);
+          }
+        };
+      }
+
+      @Override
+      public int size() {
+        return to - from;
+      }
+    };
+  }
+}
@@ -13,13 +13,17 @@ import io.ipfs.cid.Cid;
 import io.ipfs.multiaddr.MultiAddress;
 import io.ipfs.multihash.Multihash;
 import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
 import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.Channels;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -31,6 +35,8 @@ import java.util.Optional;
 import java.util.Random;
 import java.util.TreeMap;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -83,6 +89,15 @@ public class APITest {
     assertEquals(cid, expected, "Correct cid returned");
   }
 
+  @Test
+  public void dagPutCborObject() throws IOException {
+    CborObject object = DagJson.parse("{\"data\":1234}");
+    MerkleNode put = ipfs.dag.put(object);
+    Cid expected = Cid.decode("bafyreidbm2zncsc3j25zn7lofgd4woeh6eygdy73thfosuni2rwr3bhcvu");
+    assertEquals(expected, put.hash, "Same cid as putting the JSON");
+    assertEquals(object, DagJson.parse(ipfs.dag.get(expected)), "Round trips through dag-json");
+  }
+
   @Test
   public void keys() throws IOException {
     List<KeyInfo> existing = ipfs.key.list();
@@ -195,6 +210,200 @@ public class APITest {
       throw new IllegalStateException("Different contents!");
   }
 
+  @Test
+  public void parallelAddTest() throws IOException {
+    Path tmpDir = Files.createTempDirectory("parallel");
+    for (int i = 0; i < 4; i++) {
+      Path sub = Files.createDirectory(tmpDir.resolve("sub" + i));
+      Files.write(sub.resolve("file.bin"), randomBytes(300_000));
+      Files.write(tmpDir.resolve("loose" + i + ".txt"), ("file " + i).getBytes());
+    }
+    NamedStreamable dir = new NamedStreamable.FileWrapper(tmpDir.toFile());
+    AddArgs args = AddArgs.Builder.newInstance().setCidVersion(1).build();
+    List<MerkleNode> single = ipfs.add(dir, args);
+    List<MerkleNode> parallel = ipfs.addParallel(dir, args, 3);
+    assertEquals(single.get(single.size() - 1).hash, parallel.get(parallel.size() - 1).hash);
+    assertEquals(single.size(), parallel.size());
+  }
+
+  @Test
+  public void addMissingTest() throws IOException {
+    byte[] data = randomBytes(1_000_000);
+    UnixFSImporter importer = UnixFSImporter.cidV1();
+    MerkleNode local = ipfs.addMissing(new NamedStreamable.ByteArrayWrapper(data), importer);
+    MerkleNode added =
+        ipfs.add(new NamedStreamable.ByteArrayWrapper(data), importer.toAddArgs()).get(0);
+    assertEquals(added.hash, local.hash);
+    assertArrayEquals(data, ipfs.cat(local.hash));
+  }
+
+  @Test
+  public void blockHas() throws Exception {
+    byte[] data = randomBytes(1000);
+    MerkleNode stored = ipfs.block.put(data, Optional.of("raw"));
+    assertTrue(ipfs.block.has(stored.hash));
+    Cid missing =
+        new Cid(
+            1,
+            Cid.Codec.Raw,
+            Multihash.Type.sha2_256,
+            MessageDigest.getInstance("SHA-256").digest(randomBytes(1000)));
+    assertFalse(ipfs.block.has(missing));
+    IPFS unreachable = new IPFS("127.0.0.1", 1, "/api/v0/", false, false);
+    assertThrows(RuntimeException.class, () -> unreachable.block.has(missing));
+  }
+
+  @Test
+  public void resumableUploadTest() throws IOException {
+    byte[] data = randomBytes(3_500_000);
+    Path source = Files.createTempFile("upload", ".bin");
+    Files.write(source, data);
+    Path checkpoint = Files.createTempFile("upload", ".checkpoint");
+    String target = "/resumable/" + UUID.randomUUID() + ".bin";
+    // a stale checkpoint ahead of what the node has must not be trusted
+    Files.write(
+        checkpoint,
+        ("source="
+                + source.toAbsolutePath()
+                + "\ntarget="
+                + target
+                + "\nsize="
+                + data.length
+                + "\nmodified="
+                + Files.getLastModifiedTime(source).toMillis()
+                + "\noffset=2000000")
+            .getBytes());
+    Map stat = new ResumableUpload(ipfs, source, target, checkpoint, 1024 * 1024, 1).upload();
+    assertEquals(data.length, ((Number) stat.get("Size")).intValue());
+    assertArrayEquals(data, ipfs.files.read(target));
+    assertFalse(Files.exists(checkpoint));
+    ipfs.files.rm("/resumable", true, true);
+  }
+
+  @Test
+  public void mappedFileBlockPut() throws IOException {
+    byte[] data = randomBytes(200_000);
+    Path source = Files.createTempFile("mapped", ".bin");
+    Files.write(source, data);
+    NamedStreamable.MappedFileWrapper file = new NamedStreamable.MappedFileWrapper(source);
+    NamedStreamable.MappedFileWrapper half = file.slice(100_000, 100_000);
+    MerkleNode mapped = ipfs.block.put(half, Optional.of("raw"));
+    MerkleNode copied =
+        ipfs.block.put(Arrays.copyOfRange(data, 100_000, 200_000), Optional.of("raw"));
+    assertEquals(copied.hash, mapped.hash);
+    MerkleNode buffered =
+        ipfs.block.put(new NamedStreamable.ByteBufferWrapper(half.map()), Optional.of("raw"));
+    assertEquals(copied.hash, buffered.hash);
+    assertArrayEquals(data, file.getContents());
+  }
+
+  @Test
+  public void bulkBlockPut() throws IOException {
+    List<byte[]> blocks = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) blocks.add(randomBytes(100));
+    List<Cid> cids = ipfs.block.putBulk(blocks, Optional.of("raw"), 50_000);
+    assertEquals(blocks.size(), cids.size());
+    assertEquals(ipfs.block.put(blocks.get(0), Optional.of("raw")).hash, cids.get(0));
+    for (int i = 0; i < blocks.size(); i += 99)
+      assertArrayEquals(blocks.get(i), ipfs.block.get(cids.get(i)));
+  }
+
+  @Test
+  public void parallelBlockPutAndGet() throws Exception {
+    List<byte[]> blocks = new ArrayList<>();
+    for (int i = 0; i < 100; i++) blocks.add(randomBytes(1000));
+    List<CompletableFuture<MerkleNode>> put = ipfs.block.put(blocks, Optional.of("raw"), 8);
+    List<Multihash> hashes = new ArrayList<>();
+    for (CompletableFuture<MerkleNode> f : put) hashes.add(f.get().hash);
+    List<CompletableFuture<byte[]>> got = ipfs.block.get(hashes, 8);
+    assertEquals(blocks.size(), got.size());
+    for (int i = 0; i < blocks.size(); i++) assertArrayEquals(blocks.get(i), got.get(i).get());
+  }
+
+  @Test
+  public void transferToTargets() throws IOException {
+    byte[] data = randomBytes(3_000_000);
+    MerkleNode added = ipfs.add(new NamedStreamable.ByteArrayWrapper(data)).get(0);
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    assertEquals(data.length, ipfs.cat(added.hash, out));
+    assertArrayEquals(data, out.toByteArray());
+
+    Path target = Files.createTempFile("cat", ".bin");
+    assertEquals(data.length, ipfs.cat(added.hash, target));
+    assertArrayEquals(data, Files.readAllBytes(target));
+
+    ByteArrayOutputStream tar = new ByteArrayOutputStream();
+    long n = ipfs.get(added.hash, Channels.newChannel(tar));
+    assertTrue(n > 0);
+    assertEquals(tar.size(), n);
+    assertArrayEquals(ipfs.get(added.hash), tar.toByteArray());
+  }
+
+  @Test
+  public void rangedDownload() throws IOException {
+    byte[] data = randomBytes(5_000_000);
+    MerkleNode added = ipfs.add(new NamedStreamable.ByteArrayWrapper(data)).get(0);
+    assertArrayEquals(
+        Arrays.copyOfRange(data, 1_000_000, 1_000_100), ipfs.cat(added.hash, 1_000_000, 100));
+
+    Path target = Files.createTempFile("ranged", ".bin");
+    RangedDownloader downloader =
+        new RangedDownloader(Arrays.asList(ipfs, ipfs), 1024 * 1024, 4, 2, 64 * 1024);
+    assertEquals(data.length, downloader.download(added.hash, target));
+    assertArrayEquals(data, Files.readAllBytes(target));
+  }
+
+  @Test
+  public void dagExport() throws IOException {
+    byte[] data = randomBytes(2_000_000);
+    MerkleNode added = ipfs.add(new NamedStreamable.ByteArrayWrapper(data)).get(0);
+    Cid root = (Cid) added.hash;
+    List<Cid> exported = new ArrayList<>();
+    ipfs.dag.export(root, true, block -> exported.add(block.left));
+    assertEquals(root, exported.get(0));
+    assertTrue(exported.size() > 1);
+
+    Path car = Files.createTempFile("export", ".car");
+    long size = ipfs.dag.export(root, car);
+    assertEquals(Files.size(car), size);
+    try (Car.Reader reader = new Car.Reader(Files.newInputStream(car), true)) {
+      assertEquals(Collections.singletonList(root), reader.roots);
+    }
+  }
+
+  @Test
+  public void dagPrefetch() throws IOException {
+    byte[] data = randomBytes(2_000_000);
+    Cid root = (Cid) ipfs.add(new NamedStreamable.ByteArrayWrapper(data)).get(0).hash;
+    List<Multihash> refs = ipfs.refs(root, true);
+    List<Cid> visited = new ArrayList<>();
+    long fetched =
+        new DagPrefetcher(ipfs, 8, DagPrefetcher.Order.DEPTH_FIRST)
+            .walk(root, (cid, block) -> visited.add(cid));
+    assertEquals(refs.size() + 1, fetched);
+    assertEquals(root, visited.get(0));
+    assertEquals(new HashSet<>(refs), new HashSet<>(visited.subList(1, visited.size())));
+  }
+
+  @Test
+  public void extractDirectory() throws IOException {
+    Path source = Paths.get("src/test/resources/html");
+    List<MerkleNode> added = ipfs.add(new NamedStreamable.FileWrapper(source.toFile()));
+    MerkleNode root = added.get(added.size() - 1);
+    Path target = Files.createTempDirectory("extract");
+    List<Path> entries = Collections.synchronizedList(new ArrayList<>());
+    ipfs.extract(root.hash, target, entries::add, 4);
+    assertEquals(added.size(), entries.size());
+    Path extracted = target.resolve(root.hash.toString());
+    try (Stream<Path> files = Files.walk(source)) {
+      for (Path file : (Iterable<Path>) files.filter(Files::isRegularFile)::iterator)
+        assertArrayEquals(
+            Files.readAllBytes(file),
+            Files.readAllBytes(extracted.resolve(source.relativize(file).toString())));
+    }
+  }
+
   @Disabled
   @Test
   public void largeFileTest() throws IOException {
@@ -251,6 +460,23 @@ public class APITest {
       throw new IllegalStateException("Object shouldn't be present!");
   }
 
+  @Test
+  public void streamingAdd() throws IOException {
+    byte[] data = randomBytes(1024 * 1024);
+    NamedStreamable file = new NamedStreamable.ByteArrayWrapper("streamed.bin", data);
+    List<MerkleNode> streamed = new ArrayList<>();
+    List<Long> progress = new ArrayList<>();
+    ipfs.add(
+        Collections.singletonList(file),
+        AddArgs.Builder.newInstance().build(),
+        streamed::add,
+        (name, bytes) -> progress.add(bytes));
+    assertEquals(1, streamed.size());
+    assertEquals(ipfs.add(file).get(0).hash, streamed.get(0).hash);
+    assertFalse(progress.isEmpty(), "Progress reported");
+    assertEquals(data.length, (long) progress.get(progress.size() - 1));
+  }
+
   public void fileTest(NamedStreamable file) throws IOException {
     MerkleNode addResult = ipfs.add(file).get(0);
     byte[] catResult = ipfs.cat(addResult.hash);
@@ -633,6 +859,44 @@ public class APITest {
     assertNotEquals(results.get(0), Collections.emptyMap());
   }
 
+  @Test
+  public void pubsubPublisher() throws Exception {
+    String topic = "topic" + System.nanoTime();
+    Stream<Map<String, Object>> sub = ipfs.pubsub.sub(topic);
+    int nMessages = 50;
+    List<CompletableFuture<Void>> sent = new ArrayList<>();
+    try (PubsubPublisher publisher = ipfs.pubsub.publisher(topic, 4)) {
+      for (int i = 0; i < nMessages; i++) sent.add(publisher.publish("message " + i));
+      publisher.flush();
+      assertEquals(nMessages, publisher.stats().published);
+    }
+    assertTrue(sent.stream().allMatch(f -> f.isDone() && !f.isCompletedExceptionally()));
+    assertNotEquals(Collections.emptyMap(), sub.findFirst().get());
+  }
+
+  @Test
+  public void pubsubPublisherFromCallbacks() throws Exception {
+    String topic = "topic" + System.nanoTime();
+    List<CompletableFuture<Void>> sent = new ArrayList<>();
+    try (PubsubPublisher publisher = ipfs.pubsub.publisher(topic, 1)) {
+      sent.add(
+          publisher
+              .publish("first")
+              .thenCompose(
+                  v -> {
+                    try {
+                      publisher.flush();
+                      return publisher.publish("second");
+                    } catch (InterruptedException e) {
+                      throw new RuntimeException(e.getMessage(), e);
+                    }
+                  }));
+      sent.get(0).get(10, TimeUnit.SECONDS);
+      publisher.flush();
+      assertEquals(2, publisher.stats().published);
+    }
+  }
+
   private static String toEscapedHex(byte[] in) throws IOException {
     StringBuilder res = new StringBuilder();
     for (byte b : in) {
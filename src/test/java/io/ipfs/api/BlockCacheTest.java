@@ -0,0 +1,52 @@
+package io.ipfs.api;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.ipfs.cid.Cid;
+import io.ipfs.multihash.Multihash;
+import org.junit.jupiter.api.Test;
+
+public class BlockCacheTest {
+
+  private static Cid cid(int i) {
+    return Sha256.cid(1, Cid.Codec.Raw, ("block " + i).getBytes());
+  }
+
+  @Test
+  public void boundedByWeight() {
+    BlockCache cache = new BlockCache(100_000, 1);
+    for (int i = 0; i < 100; i++) cache.put(cid(i), new byte[10_000]);
+    assertTrue(cache.weight() <= 100_000);
+    assertTrue(cache.evictions() > 0);
+    assertTrue(cache.get(cid(99)).isPresent());
+    assertFalse(cache.get(cid(0)).isPresent());
+  }
+
+  @Test
+  public void frequentlyReadBlocksSurviveScans() {
+    BlockCache cache = new BlockCache(100_000, 1);
+    Cid hot = cid(-1);
+    cache.put(hot, new byte[1000]);
+    cache.get(hot);
+    for (int i = 0; i < 1000; i++) cache.put(cid(i), new byte[1000]);
+    assertTrue(cache.get(hot).isPresent());
+  }
+
+  @Test
+  public void keyedByMultihash() {
+    BlockCache cache = new BlockCache(100_000);
+    byte[] block = "hello".getBytes();
+    Cid v1 = Sha256.cid(1, Cid.Codec.DagProtobuf, block);
+    cache.put(v1, block);
+    Multihash v0 = new Cid(0, Cid.Codec.DagProtobuf, v1.getType(), v1.getHash());
+    assertArrayEquals(block, cache.get(v0).get());
+    cache.get(v0).get()[0] = 0;
+    assertArrayEquals(block, cache.get(v1).get());
+    assertEquals(3, cache.hits());
+    assertFalse(cache.get(cid(1)).isPresent());
+    assertEquals(1, cache.misses());
+  }
+}
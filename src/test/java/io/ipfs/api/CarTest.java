@@ -0,0 +1,84 @@
+package io.ipfs.api;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import io.ipfs.cid.Cid;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+public class CarTest {
+
+  @Test
+  public void headerEncoding() throws Exception {
+    Cid root = Sha256.cid(1, Cid.Codec.Raw, "root".getBytes());
+    ByteArrayOutputStream expected = new ByteArrayOutputStream();
+    expected.write(58); // header length
+    expected.write(hex("a265726f6f747381d82a582500")); // {"roots": [42(h'00' ++ cid)]
+    expected.write(root.toBytes());
+    expected.write(hex("6776657273696f6e01")); // "version": 1}
+    assertArrayEquals(expected.toByteArray(), Car.header(Collections.singletonList(root)));
+  }
+
+  @Test
+  public void blockFraming() throws Exception {
+    byte[] a = "first".getBytes();
+    byte[] b = new byte[300];
+    List<Pair<Cid, byte[]>> blocks =
+        Arrays.asList(
+            new Pair<>(Sha256.cid(1, Cid.Codec.Raw, a), a),
+            new Pair<>(Sha256.cid(0, Cid.Codec.DagProtobuf, b), b));
+    byte[] car = Car.stream(Collections.singletonList(blocks.get(0).left), blocks).readAllBytes();
+    long expectedLength = Car.header(Collections.singletonList(blocks.get(0).left)).length;
+    for (Pair<Cid, byte[]> block : blocks)
+      expectedLength += Car.sectionLength(block.left, block.right);
+    assertEquals(expectedLength, car.length);
+    // the last section is a two byte varint of 34 + 300, the v0 cid and the data
+    int offset = car.length - 300 - 34 - 2;
+    assertArrayEquals(new byte[] {(byte) 0xce, 0x02}, Arrays.copyOfRange(car, offset, offset + 2));
+    assertArrayEquals(b, Arrays.copyOfRange(car, car.length - 300, car.length));
+  }
+
+  @Test
+  public void roundTrip() throws Exception {
+    List<Pair<Cid, byte[]>> blocks = new ArrayList<>();
+    for (int i = 0; i < 20; i++) {
+      byte[] data = ("block " + i).getBytes();
+      Cid cid =
+          i == 0
+              ? Sha256.cid(0, Cid.Codec.DagProtobuf, data)
+              : Sha256.cid(1, i % 2 == 0 ? Cid.Codec.Raw : Cid.Codec.DagCbor, data);
+      blocks.add(new Pair<>(cid, data));
+    }
+    List<Cid> roots = Collections.singletonList(blocks.get(0).left);
+    try (Car.Reader reader = new Car.Reader(Car.stream(roots, blocks), true)) {
+      assertEquals(roots, reader.roots);
+      for (Pair<Cid, byte[]> expected : blocks) {
+        Pair<Cid, byte[]> block = reader.next();
+        assertEquals(expected.left, block.left);
+        assertArrayEquals(expected.right, block.right);
+      }
+      assertNull(reader.next());
+    }
+
+    byte[] car = Car.stream(roots, blocks).readAllBytes();
+    car[car.length - 1] ^= 1;
+    Car.Reader tampered = new Car.Reader(new ByteArrayInputStream(car), true);
+    for (int i = 0; i < blocks.size() - 1; i++) tampered.next();
+    assertThrows(IllegalStateException.class, tampered::next);
+  }
+
+  private static byte[] hex(String hex) {
+    byte[] res = new byte[hex.length() / 2];
+    for (int i = 0; i < res.length; i++)
+      res[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+    return res;
+  }
+}
@@ -0,0 +1,102 @@
+package io.ipfs.api;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import io.ipfs.api.cbor.CborObject;
+import io.ipfs.cid.Cid;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+public class DagJsonTest {
+
+  private static final String LINK = "bafyreidbm2zncsc3j25zn7lofgd4woeh6eygdy73thfosuni2rwr3bhcvu";
+
+  @Test
+  public void roundTrip() {
+    String json =
+        "{\"a\":[1,-2,1.5,-2.5E-7,true,false,null],\"aa\":\"tab\\t\\\"quote\\\" \\u00e9\\u0001\","
+            + "\"b\":{\"/\":{\"bytes\":\"AAEC/w\"}},\"link\":{\"/\":\""
+            + LINK
+            + "\"},\"nested\":{\"x\":{}}}";
+    CborObject cbor = DagJson.parse(json);
+    Map<CborObject, CborObject> map = ((CborObject.CborMap) cbor).values;
+    assertEquals(
+        new CborObject.CborString("tab\t\"quote\" é\u0001"),
+        map.get(new CborObject.CborString("aa")));
+    assertArrayEquals(
+        new byte[] {0, 1, 2, (byte) 0xff},
+        ((CborObject.CborByteArray) map.get(new CborObject.CborString("b"))).value);
+    assertEquals(
+        new CborObject.CborMerkleLink(Cid.decode(LINK)),
+        map.get(new CborObject.CborString("link")));
+    List<CborObject> list = ((CborObject.CborList) map.get(new CborObject.CborString("a"))).value;
+    assertEquals(new CborObject.CborDouble(1.5), list.get(2));
+    assertEquals(new CborObject.CborLong(-2), list.get(1));
+
+    // canonical DAG-JSON orders keys by bytes, dag-cbor by length first
+    String canonical = DagJson.toString(cbor);
+    assertEquals(cbor, DagJson.parse(canonical));
+    assertEquals(canonical, DagJson.toString(DagJson.parse(canonical)));
+    assertEquals(cbor, CborObject.fromByteArray(cbor.toByteArray()));
+    assertEquals(
+        "{\"a\":1,\"aa\":2,\"b\":3}",
+        DagJson.toString(DagJson.parse(" { \"b\" : 3 , \"aa\" : 2 , \"a\" : 1 } ")));
+  }
+
+  @Test
+  public void fromJavaValues() {
+    Map<String, Object> json = new LinkedHashMap<>();
+    json.put("name", "blogpost");
+    json.put("count", 3);
+    json.put("ratio", 0.25);
+    json.put("link", Cid.decode(LINK));
+    json.put("ref", JSONParser.parse("{\"/\":\"" + LINK + "\"}"));
+    json.put("documents", Arrays.asList());
+    CborObject cbor = DagJson.fromJSON(json);
+    assertEquals(
+        DagJson.parse(
+            "{\"count\":3,\"documents\":[],\"link\":{\"/\":\""
+                + LINK
+                + "\"},\"name\":\"blogpost\",\"ratio\":0.25,\"ref\":{\"/\":\""
+                + LINK
+                + "\"}}"),
+        cbor);
+
+    IpldNode node = IpldNode.fromJSON(json);
+    assertEquals(cbor, node.toCbor());
+    assertEquals(IpldNode.fromCBOR(cbor).cid(), node.cid());
+    assertEquals(cbor.toByteArray().length, node.size());
+    assertArrayEquals(cbor.toByteArray(), node.rawData());
+    assertEquals(2, node.getLinks().size());
+    assertEquals(
+        new CborObject.CborString("blogpost"), node.resolve(Arrays.asList("name")).left.toCbor());
+  }
+
+  @Test
+  public void rejectsInvalidInput() {
+    for (String json :
+        new String[] {
+          "{\"a\":1,\"a\":2}",
+          "[1,]",
+          "01",
+          "1.",
+          "\"unterminated",
+          "{\"/\":{\"bytes\":\"!!\"}}",
+          "{\"/\":1}",
+          "[1] 2",
+          "99999999999999999999",
+          "\"\\x\"",
+          "\"\\u+041\"",
+          "\"\\u-001\"",
+          "\"\\u00g1\"",
+          "\"\\u\uff10041\""
+        }) assertThrows(IllegalStateException.class, () -> DagJson.parse(json), json);
+    assertThrows(
+        IllegalStateException.class, () -> DagJson.toString(new CborObject.CborDouble(Double.NaN)));
+  }
+}
@@ -0,0 +1,53 @@
+package io.ipfs.api;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.ipfs.api.NamedStreamable.ByteArrayWrapper;
+import io.ipfs.api.cbor.CborObject;
+import io.ipfs.cid.Cid;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import org.junit.jupiter.api.Test;
+
+public class DagPrefetcherTest {
+
+  @Test
+  public void dagPbLinks() throws Exception {
+    Map<Cid, byte[]> blocks = new LinkedHashMap<>();
+    MerkleNode root =
+        new UnixFSImporter(0, true, 1)
+            .importFile(
+                new ByteArrayWrapper(new byte[UnixFSImporter.LINKS_PER_BLOCK + 1]), blocks::put);
+    Cid rootCid = (Cid) root.hash;
+    List<Cid> children = DagPrefetcher.links(rootCid, blocks.get(rootCid));
+    assertEquals(2, children.size());
+    List<Cid> leaves = new ArrayList<>();
+    for (Cid child : children) leaves.addAll(DagPrefetcher.links(child, blocks.get(child)));
+    assertEquals(UnixFSImporter.LINKS_PER_BLOCK + 1, leaves.size());
+    for (Cid leaf : leaves) {
+      assertEquals(Cid.Codec.Raw, leaf.codec);
+      assertTrue(DagPrefetcher.links(leaf, blocks.get(leaf)).isEmpty());
+    }
+  }
+
+  @Test
+  public void dagCborLinks() {
+    Cid a = Sha256.cid(1, Cid.Codec.Raw, "a".getBytes());
+    Cid b = Sha256.cid(1, Cid.Codec.DagCbor, "b".getBytes());
+    SortedMap<CborObject, CborObject> map = new TreeMap<>();
+    map.put(new CborObject.CborString("a"), new CborObject.CborMerkleLink(a));
+    map.put(
+        new CborObject.CborString("b"),
+        new CborObject.CborList(
+            Arrays.asList(new CborObject.CborLong(1), new CborObject.CborMerkleLink(b))));
+    byte[] block = new CborObject.CborMap(map).toByteArray();
+    Cid cid = Sha256.cid(1, Cid.Codec.DagCbor, block);
+    assertEquals(Arrays.asList(a, b), DagPrefetcher.links(cid, block));
+  }
+}
@@ -0,0 +1,112 @@
+package io.ipfs.api;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.ipfs.cid.Cid;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class DiskBlockCacheTest {
+
+  @TempDir Path dir;
+
+  private static byte[] block(int i) {
+    return ("block " + i).getBytes();
+  }
+
+  private static Cid cid(int i) {
+    return Sha256.cid(1, Cid.Codec.Raw, block(i));
+  }
+
+  @Test
+  public void survivesReopen() throws Exception {
+    try (DiskBlockCache cache = new DiskBlockCache(dir, 1 << 20, 64 * 1024)) {
+      for (int i = 0; i < 5000; i++) cache.put(cid(i), block(i));
+      assertEquals(5000, cache.size());
+    }
+    try (DiskBlockCache cache = new DiskBlockCache(dir, 1 << 20, 64 * 1024)) {
+      assertEquals(5000, cache.size());
+      for (int i = 0; i < 5000; i++) assertArrayEquals(block(i), cache.get(cid(i)).get());
+      assertFalse(cache.get(cid(-1)).isPresent());
+      assertEquals(1, cache.misses());
+    }
+  }
+
+  @Test
+  public void missesAfterClose() throws Exception {
+    DiskBlockCache cache = new DiskBlockCache(dir, 1 << 20, 64 * 1024);
+    cache.put(cid(1), block(1));
+    cache.close();
+    assertFalse(cache.get(cid(1)).isPresent());
+    assertEquals(0, cache.size());
+    assertThrows(IOException.class, () -> cache.put(cid(2), block(2)));
+    cache.close();
+  }
+
+  @Test
+  public void evictsOldestSegment() throws Exception {
+    try (DiskBlockCache cache = new DiskBlockCache(dir, 128 * 1024, 64 * 1024)) {
+      for (int i = 0; i < 100; i++) cache.put(cid(i), new byte[4096]);
+      assertTrue(cache.evictions() > 0);
+      assertFalse(cache.get(cid(0)).isPresent());
+      assertTrue(cache.get(cid(99)).isPresent());
+      try (Stream<Path> files = Files.list(dir)) {
+        assertEquals(2, files.count());
+      }
+    }
+  }
+
+  @Test
+  public void discardsTornTail() throws Exception {
+    try (DiskBlockCache cache = new DiskBlockCache(dir, 1 << 20, 64 * 1024)) {
+      for (int i = 0; i < 3; i++) cache.put(cid(i), block(i));
+    }
+    // corrupt the value of the last record, as if the write had been interrupted
+    Path segment = dir.resolve("00000000.seg");
+    byte[] last = block(2);
+    try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+      long end = 8;
+      for (int i = 0; i < 3; i++) end += 12 + cid(i).getHash().length + 2 + block(i).length;
+      file.seek(end - 1);
+      file.write(last[last.length - 1] + 1);
+    }
+    try (DiskBlockCache cache = new DiskBlockCache(dir, 1 << 20, 64 * 1024)) {
+      assertEquals(2, cache.size());
+      assertFalse(cache.get(cid(2)).isPresent());
+      cache.put(cid(3), block(3));
+    }
+    try (DiskBlockCache cache = new DiskBlockCache(dir, 1 << 20, 64 * 1024)) {
+      assertEquals(3, cache.size());
+      assertArrayEquals(block(3), cache.get(cid(3)).get());
+    }
+  }
+
+  @Test
+  public void clearsDataOfHeaderlessRecords() throws Exception {
+    try (DiskBlockCache cache = new DiskBlockCache(dir, 1 << 20, 64 * 1024)) {
+      for (int i = 0; i < 3; i++) cache.put(cid(i), block(i));
+    }
+    // a record whose key and value were written but not its header, which goes last
+    Path segment = dir.resolve("00000000.seg");
+    long end = 8;
+    for (int i = 0; i < 3; i++) end += 12 + cid(i).getHash().length + 2 + block(i).length;
+    try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+      file.seek(end + 12);
+      file.write(new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9});
+    }
+    try (DiskBlockCache cache = new DiskBlockCache(dir, 1 << 20, 64 * 1024)) {
+      assertEquals(3, cache.size());
+    }
+    byte[] contents = Files.readAllBytes(segment);
+    for (int i = (int) end; i < contents.length; i++) assertEquals(0, contents[i]);
+  }
+}
@@ -0,0 +1,117 @@
+package io.ipfs.api;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import io.ipfs.api.cbor.CborObject;
+import io.ipfs.cid.Cid;
+import io.ipfs.multihash.Multihash;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.jupiter.api.Test;
+
+public class IpldNodeTest {
+
+  private static final Cid LINK =
+      Cid.decode("bafyreidbm2zncsc3j25zn7lofgd4woeh6eygdy73thfosuni2rwr3bhcvu");
+
+  private static CborObject sample() {
+    Map<String, CborObject> child = new TreeMap<>();
+    child.put("size", new CborObject.CborLong(42));
+    child.put("next", new CborObject.CborMerkleLink(LINK));
+    Map<String, CborObject> root = new TreeMap<>();
+    root.put("data", new CborObject.CborByteArray(new byte[50_000]));
+    root.put("children", new CborObject.CborList(Arrays.asList(CborObject.CborMap.build(child))));
+    return CborObject.CborMap.build(root);
+  }
+
+  private static List<IpldNode> nodes() {
+    return Arrays.asList(IpldNode.fromCBOR(sample()), IpldNode.fromCBOR(sample().toByteArray()));
+  }
+
+  @Test
+  public void resolve() {
+    for (IpldNode node : nodes()) {
+      Pair<IpldNode, List<String>> size = node.resolve(Arrays.asList("children", "0", "size"));
+      assertEquals(new CborObject.CborLong(42), size.left.toCbor());
+      assertEquals(Collections.emptyList(), size.right);
+      assertArrayEquals(new CborObject.CborLong(42).toByteArray(), size.left.rawData());
+
+      Pair<IpldNode, List<String>> link = node.resolve(Arrays.asList("children", "0", "next", "a"));
+      assertEquals(new CborObject.CborMerkleLink(LINK), link.left.toCbor());
+      assertEquals(Collections.singletonList("a"), link.right);
+      assertEquals(1, link.left.getLinks().size());
+
+      assertEquals(node.cid(), node.resolve(Collections.emptyList()).left.cid());
+      assertThrows(IllegalStateException.class, () -> node.resolve(Arrays.asList("children", "1")));
+      assertThrows(IllegalStateException.class, () -> node.resolve(Arrays.asList("nope")));
+    }
+  }
+
+  @Test
+  public void encodedNodesMatchDecoded() {
+    IpldNode decoded = IpldNode.fromCBOR(sample());
+    IpldNode encoded = IpldNode.fromCBOR(sample().toByteArray());
+    assertEquals(decoded.cid(), encoded.cid());
+    assertEquals(decoded.size(), encoded.size());
+    assertEquals(decoded.getLinks(), encoded.getLinks());
+    assertEquals(decoded.tree("", -1), encoded.tree("", -1));
+  }
+
+  @Test
+  public void encodedNodesCopyTheirInput() {
+    byte[] raw = sample().toByteArray();
+    IpldNode node = IpldNode.fromCBOR(raw);
+    Cid cid = IpldNode.fromCBOR(sample()).cid();
+    raw[raw.length - 1] ^= 1;
+    assertEquals(cid, node.cid());
+    assertArrayEquals(sample().toByteArray(), node.rawData());
+    assertThrows(IllegalArgumentException.class, () -> IpldNode.fromCBOR((byte[]) null));
+  }
+
+  @Test
+  public void derivedValuesAreComputedOnce() throws Exception {
+    for (IpldNode node : nodes()) {
+      Cid cid = node.cid();
+      assertSame(cid, node.cid());
+      assertEquals(
+          new Cid(
+              1,
+              Cid.Codec.DagCbor,
+              Multihash.Type.sha2_256,
+              MessageDigest.getInstance("SHA-256").digest(sample().toByteArray())),
+          cid);
+      assertSame(node.getLinks(), node.getLinks());
+      assertThrows(UnsupportedOperationException.class, () -> node.getLinks().clear());
+      node.rawData()[0] ^= 1;
+      assertArrayEquals(sample().toByteArray(), node.rawData());
+      assertEquals(sample().toByteArray().length, node.size());
+    }
+  }
+
+  @Test
+  public void concurrentCids() throws Exception {
+    ExecutorService pool = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<Cid>> cids = new ArrayList<>();
+      for (int i = 0; i < 64; i++) {
+        CborObject value = new CborObject.CborLong(i % 8);
+        cids.add(pool.submit(() -> IpldNode.fromCBOR(value).cid()));
+      }
+      for (int i = 0; i < 64; i++)
+        assertEquals(IpldNode.fromCBOR(new CborObject.CborLong(i % 8)).cid(), cids.get(i).get());
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+}
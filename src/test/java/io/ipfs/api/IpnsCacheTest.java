@@ -0,0 +1,134 @@
+package io.ipfs.api;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+
+public class IpnsCacheTest {
+
+  private final AtomicLong now = new AtomicLong();
+
+  private IpnsCache cache() {
+    return new IpnsCache(1000, 10_000, 100, now::get);
+  }
+
+  private static void advanceMillis(AtomicLong clock, long millis) {
+    clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(millis));
+  }
+
+  @Test
+  public void servesStaleWhileRefreshing() throws Exception {
+    AtomicInteger calls = new AtomicInteger();
+    CountDownLatch refreshed = new CountDownLatch(1);
+    IpnsCache.Resolver resolver =
+        name -> {
+          int call = calls.incrementAndGet();
+          if (call == 2) refreshed.countDown();
+          return "/ipfs/v" + call;
+        };
+    try (IpnsCache cache = cache()) {
+      assertEquals("/ipfs/v1", cache.resolve("k", resolver));
+      assertEquals("/ipfs/v1", cache.resolve("k", resolver));
+      assertEquals(1, calls.get());
+      advanceMillis(now, 2000);
+      assertEquals("/ipfs/v1", cache.resolve("k", resolver));
+      assertEquals(true, refreshed.await(5, TimeUnit.SECONDS));
+      while (cache.resolve("k", resolver).equals("/ipfs/v1")) Thread.sleep(1);
+      assertEquals(1, cache.refreshes());
+      advanceMillis(now, 20_000);
+      assertEquals("/ipfs/v3", cache.resolve("k", resolver));
+    }
+  }
+
+  @Test
+  public void cachesFailuresBriefly() throws Exception {
+    AtomicInteger calls = new AtomicInteger();
+    IpnsCache.Resolver resolver =
+        name -> {
+          if (calls.incrementAndGet() == 1) throw new IOException("not found");
+          return "/ipfs/ok";
+        };
+    try (IpnsCache cache = cache()) {
+      assertThrows(IOException.class, () -> cache.resolve("k", resolver));
+      assertThrows(IOException.class, () -> cache.resolve("k", resolver));
+      assertEquals(1, calls.get());
+      advanceMillis(now, 200);
+      assertEquals("/ipfs/ok", cache.resolve("k", resolver));
+      assertEquals(1, cache.failures());
+    }
+  }
+
+  @Test
+  public void failedRefreshPastStaleWindowIsAFailure() throws Exception {
+    AtomicInteger calls = new AtomicInteger();
+    CountDownLatch refreshing = new CountDownLatch(1);
+    CountDownLatch fail = new CountDownLatch(1);
+    IpnsCache.Resolver resolver =
+        name -> {
+          if (calls.incrementAndGet() == 1) return "/ipfs/v1";
+          refreshing.countDown();
+          try {
+            fail.await();
+          } catch (InterruptedException e) {
+            throw new IOException(e);
+          }
+          throw new IOException("unreachable");
+        };
+    ExecutorService pool = Executors.newSingleThreadExecutor();
+    try (IpnsCache cache = cache()) {
+      assertEquals("/ipfs/v1", cache.resolve("k", resolver));
+      advanceMillis(now, 2000);
+      assertEquals("/ipfs/v1", cache.resolve("k", resolver));
+      assertEquals(true, refreshing.await(5, TimeUnit.SECONDS));
+      advanceMillis(now, 20_000);
+      Future<String> joined = pool.submit(() -> cache.resolve("k", resolver));
+      while (cache.misses() < 2) Thread.sleep(1);
+      fail.countDown();
+      ExecutionException e = assertThrows(ExecutionException.class, joined::get);
+      assertEquals(IOException.class, e.getCause().getClass());
+      assertThrows(IOException.class, () -> cache.resolve("k", resolver));
+      assertEquals(2, calls.get());
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  @Test
+  public void concurrentMissesShareOneResolution() throws Exception {
+    AtomicInteger calls = new AtomicInteger();
+    CountDownLatch release = new CountDownLatch(1);
+    IpnsCache.Resolver resolver =
+        name -> {
+          calls.incrementAndGet();
+          try {
+            release.await();
+          } catch (InterruptedException e) {
+            throw new IOException(e);
+          }
+          return "/ipfs/once";
+        };
+    ExecutorService pool = Executors.newFixedThreadPool(8);
+    try (IpnsCache cache = cache()) {
+      List<Future<String>> results = new ArrayList<>();
+      for (int i = 0; i < 8; i++) results.add(pool.submit(() -> cache.resolve("k", resolver)));
+      while (cache.misses() < 8) Thread.sleep(1);
+      release.countDown();
+      for (Future<String> result : results) assertEquals("/ipfs/once", result.get());
+      assertEquals(1, calls.get());
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+}
@@ -0,0 +1,60 @@
+package io.ipfs.api;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+public class ListingCacheTest {
+
+  private static Map<String, Object> link(String hash, String name, Object size, int type) {
+    Map<String, Object> link = new LinkedHashMap<>();
+    link.put("Hash", hash);
+    link.put("Name", name);
+    link.put("Size", size);
+    link.put("Type", type);
+    return link;
+  }
+
+  @Test
+  public void listingsKeepParsedFields() {
+    List<Object> json =
+        Arrays.asList(
+            link(SimpleAddTest.cids.get("index.html"), "index.html", 517, 2),
+            link(SimpleAddTest.cids.get("html"), "big", "9876543210", 1));
+    ListingCache.Listing listing =
+        ListingCache.Listing.fromJSON(Collections.singletonMap("Links", json));
+    List<MerkleNode> links = listing.links();
+    for (int i = 0; i < json.size(); i++) {
+      MerkleNode expected = MerkleNode.fromJSON(json.get(i));
+      MerkleNode actual = links.get(i);
+      assertEquals(expected.hash, actual.hash);
+      assertEquals(expected.name, actual.name);
+      assertEquals(expected.size, actual.size);
+      assertEquals(expected.largeSize, actual.largeSize);
+      assertEquals(expected.type, actual.type);
+    }
+    assertSame(links, listing.links());
+    assertThrows(UnsupportedOperationException.class, () -> links.remove(0));
+  }
+
+  @Test
+  public void countsHits() {
+    ListingCache cache = new ListingCache(1 << 20);
+    ListingCache.Listing listing =
+        ListingCache.Listing.fromJSON(Collections.singletonMap("Links", Collections.emptyList()));
+    assertFalse(cache.lookup("a").isPresent());
+    cache.store("a", listing);
+    assertTrue(cache.lookup("a").isPresent());
+    assertEquals(0.5, cache.hitRatio());
+    assertTrue(cache.weight() >= 0);
+  }
+}
@@ -0,0 +1,56 @@
+package io.ipfs.api;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+
+public class PathCacheTest {
+
+  private final AtomicLong now = new AtomicLong();
+  private final List<String> requests = new ArrayList<>();
+
+  private Map daemon(String path) {
+    requests.add(path);
+    Map<String, Object> reply = new LinkedHashMap<>();
+    reply.put("Cid", Collections.singletonMap("/", "cid:" + path));
+    reply.put("RemPath", "");
+    return reply;
+  }
+
+  private static String cid(Map reply) {
+    return (String) ((Map) reply.get("Cid")).get("/");
+  }
+
+  @Test
+  public void reusesCachedPrefixes() throws Exception {
+    PathCache cache = new PathCache(1 << 20, 1000, now::get);
+    assertEquals("cid:/ipfs/root/a/b", cid(cache.resolveDag("/ipfs/root/a/b", this::daemon)));
+    assertEquals("cid:/ipfs/root/a/b", cid(cache.resolveDag("root/a/b/", this::daemon)));
+    assertEquals(1, requests.size());
+    assertEquals(
+        "cid:/ipfs/cid:/ipfs/root/a/b/d", cid(cache.resolveDag("/ipfs/root/a/b/d", this::daemon)));
+    assertEquals("/ipfs/cid:/ipfs/root/a/b/d", requests.get(1));
+    assertEquals(1, cache.hits());
+    assertEquals(1, cache.prefixHits());
+    assertEquals(1, cache.misses());
+  }
+
+  @Test
+  public void mutablePathsExpire() throws Exception {
+    PathCache cache = new PathCache(1 << 20, 1000, now::get);
+    cache.resolveDag("/ipns/name/a", this::daemon);
+    cache.resolveDag("/ipns/name/a/b", this::daemon);
+    cache.resolveDag("/ipns/name/a/b", this::daemon);
+    assertEquals(2, requests.size());
+    now.addAndGet(TimeUnit.MILLISECONDS.toNanos(1500));
+    cache.resolveDag("/ipns/name/a/b", this::daemon);
+    assertEquals("/ipns/name/a/b", requests.get(2));
+  }
+}
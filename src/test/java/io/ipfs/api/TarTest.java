@@ -0,0 +1,181 @@
+package io.ipfs.api;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class TarTest {
+
+  @TempDir Path dir;
+
+  private static void entry(ByteArrayOutputStream tar, String name, char flag, byte[] data) {
+    entry(tar, name, flag, data, "");
+  }
+
+  private static void symlink(ByteArrayOutputStream tar, String name, String linkName) {
+    entry(tar, name, '2', new byte[0], linkName);
+  }
+
+  private static void entry(
+      ByteArrayOutputStream tar, String name, char flag, byte[] data, String linkName) {
+    byte[] header = new byte[512];
+    byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+    System.arraycopy(nameBytes, 0, header, 0, Math.min(100, nameBytes.length));
+    byte[] linkBytes = linkName.getBytes(StandardCharsets.UTF_8);
+    System.arraycopy(linkBytes, 0, header, 157, Math.min(100, linkBytes.length));
+    octal(header, 100, 8, 0644);
+    octal(header, 124, 12, data.length);
+    header[156] = (byte) flag;
+    System.arraycopy("ustar\u000000".getBytes(StandardCharsets.US_ASCII), 0, header, 257, 8);
+    for (int i = 148; i < 156; i++) header[i] = ' ';
+    long sum = 0;
+    for (byte b : header) sum += b & 0xFF;
+    octal(header, 148, 7, sum);
+    tar.write(header, 0, header.length);
+    tar.write(data, 0, data.length);
+    tar.write(new byte[(512 - data.length % 512) % 512], 0, (512 - data.length % 512) % 512);
+  }
+
+  private static void octal(byte[] header, int offset, int length, long value) {
+    String s = Long.toOctalString(value);
+    while (s.length() < length - 1) s = "0" + s;
+    System.arraycopy(s.getBytes(StandardCharsets.US_ASCII), 0, header, offset, length - 1);
+  }
+
+  private static void pax(ByteArrayOutputStream tar, String key, String value) {
+    String body = " " + key + "=" + value + "\n";
+    int length = body.length() + 1;
+    while (Integer.toString(length).length() + body.length() != length) length++;
+    entry(tar, "PaxHeader", 'x', (length + body).getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static byte[] end(ByteArrayOutputStream tar) {
+    tar.write(new byte[1024], 0, 1024);
+    return tar.toByteArray();
+  }
+
+  @Test
+  public void extractsTree() throws Exception {
+    byte[] big = new byte[3 * Tar.MAX_BUFFERED_FILE];
+    new Random(1).nextBytes(big);
+    String longName = "root/" + String.join("", Collections.nCopies(30, "long")) + ".txt";
+    ByteArrayOutputStream tar = new ByteArrayOutputStream();
+    entry(tar, "root", '5', new byte[0]);
+    entry(tar, "root/a.txt", '0', "hello".getBytes());
+    entry(tar, "root/sub/big", '0', big);
+    pax(tar, "path", longName);
+    entry(tar, "ignored", '0', "long".getBytes());
+    byte[] archive = end(tar);
+
+    for (int parallelism : new int[] {1, 4}) {
+      Path target = dir.resolve("p" + parallelism);
+      List<Path> entries = Collections.synchronizedList(new ArrayList<>());
+      long written =
+          Tar.extract(new ByteArrayInputStream(archive), target, entries::add, parallelism);
+      assertEquals(5 + big.length + 4, written);
+      assertEquals(4, entries.size());
+      assertArrayEquals("hello".getBytes(), Files.readAllBytes(target.resolve("root/a.txt")));
+      assertArrayEquals(big, Files.readAllBytes(target.resolve("root/sub/big")));
+      assertArrayEquals("long".getBytes(), Files.readAllBytes(target.resolve(longName)));
+      assertFalse(Files.exists(target.resolve("ignored")));
+    }
+  }
+
+  @Test
+  public void rejectsEntriesOutsideTarget() {
+    ByteArrayOutputStream tar = new ByteArrayOutputStream();
+    entry(tar, "root/../../escape", '0', "x".getBytes());
+    byte[] archive = end(tar);
+    assertThrows(
+        IllegalStateException.class,
+        () -> Tar.extract(new ByteArrayInputStream(archive), dir, p -> {}, 1));
+    assertFalse(Files.exists(dir.getParent().resolve("escape")));
+  }
+
+  @Test
+  public void extractsSymlinksInsideTarget() throws Exception {
+    ByteArrayOutputStream tar = new ByteArrayOutputStream();
+    entry(tar, "root/sub/a.txt", '0', "hello".getBytes());
+    symlink(tar, "root/link.txt", "sub/a.txt");
+    symlink(tar, "root/dir", "sub");
+    entry(tar, "root/dir/b.txt", '0', "through".getBytes());
+    byte[] archive = end(tar);
+
+    for (int parallelism : new int[] {1, 4}) {
+      Path target = dir.resolve("p" + parallelism);
+      Tar.extract(new ByteArrayInputStream(archive), target, p -> {}, parallelism);
+      assertTrue(Files.isSymbolicLink(target.resolve("root/link.txt")));
+      assertArrayEquals("hello".getBytes(), Files.readAllBytes(target.resolve("root/link.txt")));
+      assertArrayEquals("through".getBytes(), Files.readAllBytes(target.resolve("root/sub/b.txt")));
+    }
+  }
+
+  @Test
+  public void rejectsWritesThroughSymlinks() throws Exception {
+    Path target = Files.createDirectory(dir.resolve("target"));
+    ByteArrayOutputStream tar = new ByteArrayOutputStream();
+    symlink(tar, "a", ".");
+    symlink(tar, "a/b", "..");
+    entry(tar, "a/b/evil", '0', "x".getBytes());
+    byte[] chained = end(tar);
+    assertThrows(
+        IllegalStateException.class,
+        () -> Tar.extract(new ByteArrayInputStream(chained), target, p -> {}, 1));
+    assertFalse(Files.exists(dir.resolve("evil")));
+    assertFalse(Files.exists(dir.resolve("b")));
+
+    // a symlink already in the target that leads out of it
+    Path outside = Files.createDirectory(dir.resolve("outside"));
+    Files.createSymbolicLink(target.resolve("out"), outside);
+    for (String name : new String[] {"out/evil", "out/sub/evil", "out/dir/"}) {
+      tar = new ByteArrayOutputStream();
+      entry(tar, name, '0', "x".getBytes());
+      byte[] existing = end(tar);
+      assertThrows(
+          IllegalStateException.class,
+          () -> Tar.extract(new ByteArrayInputStream(existing), target, p -> {}, 4));
+    }
+    try (java.util.stream.Stream<Path> files = Files.list(outside)) {
+      assertEquals(0, files.count());
+    }
+  }
+
+  @Test
+  public void rejectsTruncatedEntries() {
+    ByteArrayOutputStream tar = new ByteArrayOutputStream();
+    entry(tar, "root/a.txt", '0', new byte[10_000]);
+    byte[] archive = Arrays.copyOf(tar.toByteArray(), 512 + 5_000);
+    for (int parallelism : new int[] {1, 4})
+      assertThrows(
+          EOFException.class,
+          () -> Tar.extract(new ByteArrayInputStream(archive), dir, p -> {}, parallelism));
+  }
+
+  @Test
+  public void rejectsCorruptHeaders() {
+    ByteArrayOutputStream tar = new ByteArrayOutputStream();
+    entry(tar, "root/a.txt", '0', "hello".getBytes());
+    byte[] archive = end(tar);
+    archive[0] = 'R';
+    assertThrows(
+        IOException.class, () -> Tar.extract(new ByteArrayInputStream(archive), dir, p -> {}, 1));
+    assertTrue(Files.exists(dir));
+  }
+}
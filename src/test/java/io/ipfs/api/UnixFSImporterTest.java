@@ -0,0 +1,140 @@
+package io.ipfs.api;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.ipfs.api.NamedStreamable.ByteArrayWrapper;
+import io.ipfs.api.NamedStreamable.FileWrapper;
+import io.ipfs.cid.Cid;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import org.junit.jupiter.api.Test;
+
+public class UnixFSImporterTest {
+
+  private static final UnixFSImporter.BlockSink DISCARD = (cid, block) -> {};
+
+  @Test
+  public void matchesDaemonAdd() throws Exception {
+    UnixFSImporter importer = UnixFSImporter.defaults();
+    MerkleNode file =
+        importer.importFile(
+            new FileWrapper(Paths.get("src/test/resources/html/index.html").toFile()), DISCARD);
+    assertEquals(SimpleAddTest.cids.get("index.html"), file.hash.toBase58());
+
+    List<String> blocks = new ArrayList<>();
+    MerkleNode dir =
+        importer.importFile(
+            new FileWrapper(Paths.get("src/test/resources/html").toFile()),
+            (cid, block) -> blocks.add(cid.toString()));
+    assertEquals(SimpleAddTest.cids.get("html"), dir.hash.toBase58());
+    assertEquals(dir.hash.toString(), blocks.get(blocks.size() - 1));
+  }
+
+  @Test
+  public void wellKnownCids() throws Exception {
+    UnixFSImporter v0 = UnixFSImporter.defaults();
+    assertEquals(
+        "QmbFMke1KXqnYyBBWxB74N4c5SBnJMVAiMNRcGu6x1AwQH",
+        v0.importFile(new ByteArrayWrapper(new byte[0]), DISCARD).hash.toString());
+    assertEquals(
+        "QmT78zSuBmuS4z925WZfrqQ1qHaJ56DQaTfyMUF7F8ff5o",
+        v0.importFile(
+                new ByteArrayWrapper("hello world\n".getBytes(StandardCharsets.UTF_8)), DISCARD)
+            .hash
+            .toString());
+    assertEquals(
+        "bafkreihdwdcefgh4dqkjv67uzcmw7ojee6xedzdetojuzjevtenxquvyku",
+        UnixFSImporter.cidV1()
+            .importFile(new ByteArrayWrapper(new byte[0]), DISCARD)
+            .hash
+            .toString());
+  }
+
+  @Test
+  public void emptyDirectory() throws Exception {
+    NamedStreamable empty = new NamedStreamable.DirWrapper("empty", Collections.emptyList());
+    assertEquals(
+        "QmUNLLsPACCz1vLxQVkXqqLX5R1X345qqfHbsf67hvA3Nn",
+        UnixFSImporter.defaults().importFile(empty, DISCARD).hash.toString());
+  }
+
+  @Test
+  public void balancedLayout() throws Exception {
+    UnixFSImporter importer = new UnixFSImporter(0, true, 1);
+    byte[] data = new byte[UnixFSImporter.LINKS_PER_BLOCK + 1];
+    List<byte[]> blocks = new ArrayList<>();
+    MerkleNode root =
+        importer.importFile(new ByteArrayWrapper(data), (cid, block) -> blocks.add(block));
+    // 175 leaves, a full and a single child parent, and the root
+    assertEquals(UnixFSImporter.LINKS_PER_BLOCK + 4, blocks.size());
+    long total = blocks.stream().mapToLong(b -> b.length).sum();
+    assertEquals(Optional.of(Long.toString(total)), root.largeSize);
+  }
+
+  @Test
+  public void indexSkipsUnchangedFiles() throws Exception {
+    Path dir = Files.createTempDirectory("indexed");
+    Files.write(dir.resolve("a.txt"), "a".getBytes());
+    Files.write(dir.resolve("b.txt"), "b".getBytes());
+    Path indexFile = Files.createTempFile("add", ".idx");
+    Files.delete(indexFile);
+    UnixFSImporter importer = UnixFSImporter.defaults();
+    NamedStreamable tree = new FileWrapper(dir.toFile());
+
+    MerkleNode first;
+    try (AddIndex index = new AddIndex(indexFile, importer)) {
+      first = importer.importFile(tree, DISCARD, index);
+      assertEquals(2, index.size());
+    }
+    // a torn trailing record is dropped on open
+    Files.write(indexFile, new byte[] {0, 0, 1}, StandardOpenOption.APPEND);
+    try (AddIndex index = new AddIndex(indexFile, importer)) {
+      List<Cid> blocks = new ArrayList<>();
+      MerkleNode second = importer.importFile(tree, (cid, block) -> blocks.add(cid), index);
+      assertEquals(first.hash, second.hash);
+      assertEquals(Collections.singletonList(second.hash), blocks);
+      assertThrows(
+          IllegalStateException.class,
+          () -> UnixFSImporter.cidV1().importFile(tree, DISCARD, index));
+    }
+  }
+
+  @Test
+  public void indexIsCompactedOnClose() throws Exception {
+    Path dir = Files.createTempDirectory("indexed");
+    Path a = Files.write(dir.resolve("a.txt"), "a".getBytes());
+    Files.write(dir.resolve("b.txt"), "b".getBytes());
+    Path indexFile = Files.createTempFile("add", ".idx");
+    Files.delete(indexFile);
+    UnixFSImporter importer = UnixFSImporter.defaults();
+    NamedStreamable tree = new FileWrapper(dir.toFile());
+
+    try (AddIndex index = new AddIndex(indexFile, importer)) {
+      importer.importFile(tree, DISCARD, index);
+    }
+    long compacted = Files.size(indexFile);
+    for (int i = 0; i < 10; i++) {
+      Files.setLastModifiedTime(a, FileTime.fromMillis(1000L * i));
+      try (AddIndex index = new AddIndex(indexFile, importer)) {
+        importer.importFile(tree, DISCARD, index);
+      }
+    }
+    assertTrue(Files.size(indexFile) <= 2 * compacted);
+    try (AddIndex index = new AddIndex(indexFile, importer)) {
+      assertEquals(2, index.size());
+      List<Cid> blocks = new ArrayList<>();
+      importer.importFile(tree, (cid, block) -> blocks.add(cid), index);
+      assertEquals(1, blocks.size());
+    }
+  }
+}
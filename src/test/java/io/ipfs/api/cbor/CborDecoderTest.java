@@ -0,0 +1,84 @@
+package io.ipfs.api.cbor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import org.junit.jupiter.api.Test;
+
+public class CborDecoderTest {
+
+  private static CborObject sample() {
+    List<CborObject> numbers = new ArrayList<>();
+    for (long n :
+        new long[] {0, 23, 24, 255, 256, 65535, 65536, 1L << 32, Long.MAX_VALUE, -1, -25, -65537})
+      numbers.add(new CborObject.CborLong(n));
+    char[] text = new char[20_000];
+    Arrays.fill(text, 'é');
+    SortedMap<CborObject, CborObject> map = new TreeMap<>();
+    map.put(new CborObject.CborString("numbers"), new CborObject.CborList(numbers));
+    map.put(new CborObject.CborString("text"), new CborObject.CborString(new String(text)));
+    map.put(new CborObject.CborString("bytes"), new CborObject.CborByteArray(new byte[30_000]));
+    map.put(new CborObject.CborString("null"), new CborObject.CborNull());
+    map.put(new CborObject.CborString("true"), new CborObject.CborBoolean(true));
+    return new CborObject.CborMap(map);
+  }
+
+  /** A stream that returns at most a few bytes per read, to exercise refilling. */
+  private static InputStream trickle(byte[] data) {
+    return new FilterInputStream(new ByteArrayInputStream(data)) {
+      @Override
+      public int read(byte[] b, int off, int len) throws IOException {
+        return super.read(b, off, Math.min(len, 3));
+      }
+    };
+  }
+
+  @Test
+  public void allSourcesDecodeAlike() {
+    CborObject expected = sample();
+    byte[] encoded = expected.toByteArray();
+    byte[] padded = new byte[encoded.length + 10];
+    System.arraycopy(encoded, 0, padded, 5, encoded.length);
+    ByteBuffer direct = ByteBuffer.allocateDirect(encoded.length);
+    direct.put(encoded).flip();
+
+    assertEquals(expected, CborObject.deserialize(new CborDecoder(encoded)));
+    assertEquals(expected, CborObject.deserialize(new CborDecoder(padded, 5, encoded.length)));
+    assertEquals(
+        expected,
+        CborObject.deserialize(new CborDecoder(ByteBuffer.wrap(padded, 5, encoded.length))));
+    assertEquals(expected, CborObject.deserialize(new CborDecoder(direct)));
+    assertEquals(0, direct.position());
+    assertEquals(expected, CborObject.deserialize(new CborDecoder(trickle(encoded))));
+  }
+
+  @Test
+  public void truncatedInput() throws Exception {
+    byte[] encoded = sample().toByteArray();
+    CborDecoder decoder = new CborDecoder(Arrays.copyOf(encoded, encoded.length - 1));
+    assertThrows(RuntimeException.class, () -> CborObject.deserialize(decoder));
+    assertThrows(EOFException.class, () -> new CborDecoder(new byte[] {0x19, 1}).readInt());
+  }
+
+  @Test
+  public void streamsAreReadOnlyAsFarAsTheValue() throws Exception {
+    byte[] encoded = sample().toByteArray();
+    byte[] followed = Arrays.copyOf(encoded, encoded.length + 3);
+    followed[encoded.length] = 42;
+    InputStream in = new ByteArrayInputStream(followed);
+    assertEquals(sample(), CborObject.deserialize(new CborDecoder(in)));
+    assertEquals(42, in.read());
+    assertEquals(2, in.available());
+  }
+}
@@ -0,0 +1,98 @@
+package io.ipfs.api.cbor;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import io.ipfs.cid.Cid;
+import io.ipfs.multihash.Multihash;
+import java.io.ByteArrayOutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import org.junit.jupiter.api.Test;
+
+public class CborEncoderTest {
+
+  private static byte[] viaStream(CborObject object) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    object.serialize(new CborEncoder(out));
+    return out.toByteArray();
+  }
+
+  private static List<CborObject> samples() {
+    List<CborObject> res = new ArrayList<>();
+    for (long n :
+        new long[] {
+          0,
+          23,
+          24,
+          255,
+          256,
+          65535,
+          65536,
+          4294967295L,
+          4294967296L,
+          Long.MAX_VALUE,
+          -1,
+          -24,
+          -25,
+          -256,
+          -257,
+          -65537,
+          Long.MIN_VALUE
+        }) res.add(new CborObject.CborLong(n));
+    for (String s :
+        new String[] {"", "ascii", "é", "€", "😀", "a\ud800b", "\udc00", new String(new char[300])})
+      res.add(new CborObject.CborString(s));
+    res.add(new CborObject.CborByteArray(new byte[70_000]));
+    res.add(new CborObject.CborNull());
+    res.add(new CborObject.CborBoolean(false));
+    res.add(
+        new CborObject.CborMerkleLink(
+            new Cid(1, Cid.Codec.DagCbor, Multihash.Type.sha2_256, new byte[32])));
+    SortedMap<CborObject, CborObject> map = new TreeMap<>();
+    map.put(new CborObject.CborString("list"), new CborObject.CborList(new ArrayList<>(res)));
+    map.put(new CborObject.CborString("n"), new CborObject.CborLong(-7));
+    res.add(new CborObject.CborMap(map));
+    return res;
+  }
+
+  @Test
+  public void exactLengthMatchesStreamEncoding() {
+    for (CborObject object : samples()) {
+      byte[] expected = viaStream(object);
+      assertEquals(expected.length, object.encodedLength(), object.toString());
+      assertArrayEquals(expected, object.toByteArray(), object.toString());
+    }
+  }
+
+  @Test
+  public void writesIntoBuffers() {
+    CborObject object = samples().get(samples().size() - 1);
+    byte[] expected = viaStream(object);
+    for (ByteOrder order : new ByteOrder[] {ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN}) {
+      for (ByteBuffer pooled :
+          new ByteBuffer[] {
+            ByteBuffer.allocateDirect(expected.length + 16),
+            ByteBuffer.allocate(expected.length + 16)
+          }) {
+        pooled.order(order).position(16);
+        object.writeTo(pooled);
+        assertEquals(pooled.capacity(), pooled.position());
+        assertEquals(order, pooled.order());
+        byte[] written = new byte[expected.length];
+        pooled.position(16);
+        pooled.get(written);
+        assertArrayEquals(expected, written);
+      }
+    }
+    assertThrows(
+        BufferOverflowException.class,
+        () -> object.writeTo(ByteBuffer.allocate(expected.length - 1)));
+  }
+}
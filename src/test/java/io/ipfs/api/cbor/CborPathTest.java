@@ -0,0 +1,157 @@
+package io.ipfs.api.cbor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import io.ipfs.cid.Cid;
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import org.junit.jupiter.api.Test;
+
+public class CborPathTest {
+
+  private static final Cid LINK =
+      Cid.decode("bafyreidbm2zncsc3j25zn7lofgd4woeh6eygdy73thfosuni2rwr3bhcvu");
+
+  private static CborObject sample() {
+    Map<String, CborObject> inner = new TreeMap<>();
+    inner.put("name", new CborObject.CborString("ünïcode"));
+    inner.put("link", new CborObject.CborMerkleLink(LINK));
+    Map<String, CborObject> root = new TreeMap<>();
+    root.put("bytes", new CborObject.CborByteArray(new byte[100_000]));
+    root.put(
+        "list",
+        new CborObject.CborList(
+            Arrays.asList(
+                new CborObject.CborLong(-70_000),
+                new CborObject.CborNull(),
+                CborObject.CborMap.build(inner))));
+    root.put("flag", new CborObject.CborBoolean(true));
+    return CborObject.CborMap.build(root);
+  }
+
+  private static CborObject at(byte[] cbor, String... path) {
+    CborPath.Target target = CborPath.find(cbor, Arrays.asList(path));
+    return CborObject.fromByteArray(target.copyOf(cbor));
+  }
+
+  @Test
+  public void findsNestedValues() {
+    byte[] cbor = sample().toByteArray();
+    assertEquals(new CborObject.CborBoolean(true), at(cbor, "flag"));
+    assertEquals(new CborObject.CborLong(-70_000), at(cbor, "list", "0"));
+    assertEquals(new CborObject.CborNull(), at(cbor, "", "list", "1", ""));
+    assertEquals(new CborObject.CborString("ünïcode"), at(cbor, "list", "2", "name"));
+    assertEquals(sample(), at(cbor));
+  }
+
+  @Test
+  public void stopsAtLinks() {
+    byte[] cbor = sample().toByteArray();
+    CborPath.Target target = CborPath.find(cbor, Arrays.asList("list", "2", "link", "a", "b"));
+    assertEquals(Arrays.asList("a", "b"), target.remainder);
+    assertEquals(
+        new CborObject.CborMerkleLink(LINK), CborObject.fromByteArray(target.copyOf(cbor)));
+    assertEquals(
+        Collections.emptyList(), CborPath.find(cbor, Arrays.asList("list", "2", "link")).remainder);
+  }
+
+  @Test
+  public void missingSegments() {
+    byte[] cbor = sample().toByteArray();
+    assertThrows(IllegalStateException.class, () -> CborPath.find(cbor, List.of("missing")));
+    assertThrows(IllegalStateException.class, () -> CborPath.find(cbor, List.of("list", "3")));
+    assertThrows(IllegalStateException.class, () -> CborPath.find(cbor, List.of("list", "x")));
+    assertThrows(IllegalStateException.class, () -> CborPath.find(cbor, List.of("flag", "x")));
+  }
+
+  @Test
+  public void limitsNesting() {
+    byte[] nested = new byte[100_000];
+    Arrays.fill(nested, (byte) 0x81); // arrays of one element
+    assertThrows(IllegalStateException.class, () -> CborPath.find(nested, Collections.emptyList()));
+    byte[] tagged = new byte[100_000];
+    Arrays.fill(tagged, (byte) 0xc1);
+    assertThrows(IllegalStateException.class, () -> new CborDecoder(tagged).skip());
+    byte[] indefinite = new byte[100_000];
+    Arrays.fill(indefinite, (byte) 0x9f);
+    assertThrows(IllegalStateException.class, () -> new CborDecoder(indefinite).skip());
+  }
+
+  @Test
+  public void skipsEveryKindOfValue() throws IOException {
+    byte[] cbor = {
+      // half, single and double floats
+      (byte) 0xf9,
+      0x3c,
+      0x00,
+      (byte) 0xfa,
+      0x3f,
+      (byte) 0x80,
+      0x00,
+      0x00,
+      (byte) 0xfb,
+      0x3f,
+      (byte) 0xf0,
+      0,
+      0,
+      0,
+      0,
+      0,
+      0,
+      // simple value 255, undefined
+      (byte) 0xf8,
+      (byte) 0xff,
+      (byte) 0xf7,
+      // indefinite byte string of two chunks
+      0x5f,
+      0x41,
+      0x01,
+      0x42,
+      0x02,
+      0x03,
+      (byte) 0xff,
+      // indefinite array holding an indefinite map
+      (byte) 0x9f,
+      (byte) 0xbf,
+      0x61,
+      0x61,
+      0x01,
+      (byte) 0xff,
+      (byte) 0xff,
+      // tag 1 with a 64 bit integer
+      (byte) 0xc1,
+      0x1b,
+      0,
+      0,
+      0,
+      1,
+      0,
+      0,
+      0,
+      0,
+      0x07
+    };
+    CborDecoder decoder = new CborDecoder(cbor);
+    for (int i = 0; i < 8; i++) decoder.skip();
+    assertEquals(7, decoder.readInt());
+
+    byte[] large = sample().toByteArray();
+    byte[] twice = Arrays.copyOf(large, 2 * large.length);
+    System.arraycopy(large, 0, twice, large.length, large.length);
+    ByteBuffer direct = ByteBuffer.allocateDirect(twice.length).put(twice).flip();
+    for (CborDecoder d :
+        Arrays.asList(new CborDecoder(new ByteArrayInputStream(twice)), new CborDecoder(direct))) {
+      d.skip();
+      assertEquals(sample(), CborObject.deserialize(d));
+      assertThrows(EOFException.class, d::skip);
+    }
+  }
+}
@@ -0,0 +1,103 @@
+package io.ipfs.api.cbor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import org.junit.jupiter.api.Test;
+
+public class SortedArrayMapTest {
+
+  private static CborObject key(String s) {
+    return new CborObject.CborString(s);
+  }
+
+  private static CborObject value(long n) {
+    return new CborObject.CborLong(n);
+  }
+
+  @Test
+  public void matchesTreeMap() {
+    for (int size : new int[] {0, 1, 8, 9, 100}) {
+      List<Integer> order = new ArrayList<>();
+      for (int i = 0; i < size; i++) order.add(i);
+      Collections.shuffle(order);
+      Object[] keys = new Object[size];
+      Object[] values = new Object[size];
+      SortedMap<CborObject, CborObject> expected = new TreeMap<>();
+      for (int i = 0; i < size; i++) {
+        keys[i] = key("k" + order.get(i));
+        values[i] = value(order.get(i));
+        expected.put((CborObject) keys[i], (CborObject) values[i]);
+      }
+      SortedMap<CborObject, CborObject> map = SortedArrayMap.of(keys, values, size);
+      assertEquals(expected, map);
+      assertEquals(expected.hashCode(), map.hashCode());
+      assertEquals(new ArrayList<>(expected.keySet()), new ArrayList<>(map.keySet()));
+      for (int i = 0; i < size; i++) assertEquals(value(i), map.get(key("k" + i)));
+      assertFalse(map.containsKey(key("missing")));
+      assertNull(map.get(key("k" + size)));
+    }
+  }
+
+  @Test
+  public void sortedInputIsUsedAsIs() {
+    Object[] keys = {key("a"), key("b"), key("aa"), null};
+    Object[] values = {value(1), value(2), value(3), null};
+    SortedMap<CborObject, CborObject> map = SortedArrayMap.of(keys, values, 3);
+    assertEquals(3, map.size());
+    assertEquals(key("a"), map.firstKey());
+    assertEquals(key("aa"), map.lastKey());
+    keys[1] = key("c");
+    assertSame(keys[1], map.headMap(key("aa")).lastKey());
+  }
+
+  @Test
+  public void lastDuplicateWins() {
+    Object[] keys = {key("b"), key("a"), key("b"), key("a")};
+    Object[] values = {value(1), value(2), value(3), value(4)};
+    SortedMap<CborObject, CborObject> map = SortedArrayMap.of(keys, values, 4);
+    assertEquals(2, map.size());
+    assertEquals(value(4), map.get(key("a")));
+    assertEquals(value(3), map.get(key("b")));
+  }
+
+  @Test
+  public void views() {
+    Object[] keys = new Object[20];
+    Object[] values = new Object[20];
+    for (int i = 0; i < 20; i++) {
+      keys[i] = key(String.format("k%02d", i));
+      values[i] = value(i);
+    }
+    SortedMap<CborObject, CborObject> map = SortedArrayMap.of(keys, values, 20);
+    SortedMap<CborObject, CborObject> sub = map.subMap(key("k05"), key("k10"));
+    assertEquals(5, sub.size());
+    assertEquals(key("k05"), sub.firstKey());
+    assertEquals(key("k09"), sub.lastKey());
+    assertTrue(sub.containsKey(key("k07")));
+    assertFalse(sub.containsKey(key("k10")));
+    assertEquals(5, map.tailMap(key("k15")).size());
+    // canonical order is by length first
+    assertEquals(0, map.tailMap(key("k04z")).size());
+    assertEquals(0, map.headMap(key("a")).size());
+  }
+
+  @Test
+  public void decodedMapsRoundTrip() {
+    SortedMap<CborObject, CborObject> map = new TreeMap<>();
+    for (int i = 0; i < 50; i++) map.put(key("key" + i), value(i));
+    CborObject.CborMap original = new CborObject.CborMap(map);
+    CborObject decoded = CborObject.fromByteArray(original.toByteArray());
+    assertTrue(((CborObject.CborMap) decoded).values instanceof SortedArrayMap);
+    assertEquals(original, decoded);
+    assertEquals(value(42), ((CborObject.CborMap) decoded).values.get(key("key42")));
+  }
+}